@@ -0,0 +1,88 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.benchmark;
+
+import io.github.opencubicchunks.relight.handler.FirstLightHandler;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures computing initial light seeds for all chunks of a world, in both seed modes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FirstLightHandlerBenchmark {
+
+    @Param({"FLAT", "MOUNTAINS", "CAVES", "TORCHES"})
+    public WorldFixture fixture;
+
+    @Param({"ALL_BLOCKS", "SOURCES_AND_EDGES"})
+    public FirstLightHandler.SeedMode seedMode;
+
+    private FirstLightHandler handler;
+    private List<ChunkPos> chunks;
+
+    @Setup
+    public void setup() {
+        handler = new FirstLightHandler(fixture.create(), seedMode);
+        chunks = WorldFixture.allChunks();
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        handler.apply(chunks, sky, block);
+        blackhole.consume(sky);
+        blackhole.consume(block);
+    }
+
+    @Benchmark
+    public void applyParallel(Blackhole blackhole) {
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        handler.applyParallel(chunks, sky, block);
+        blackhole.consume(sky);
+        blackhole.consume(block);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.benchmark;
+
+import io.github.opencubicchunks.relight.handler.FirstLightHandler;
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
+import io.github.opencubicchunks.relight.propagator.NoopLightPropagator;
+import io.github.opencubicchunks.relight.propagator.ParallelLightPropagator;
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each {@link LightPropagator} implementation on initial light of a whole world, from the seeds of either
+ * {@link FirstLightHandler.SeedMode}, and on a single light source change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropagatorBenchmark {
+
+    public enum PropagatorType {
+        MINECRAFT, PARALLEL, NOOP;
+
+        LightPropagator create(BoxWorldAccessTestImpl world) {
+            switch (this) {
+                case MINECRAFT:
+                    return new MinecraftChunkAwareLightPropagator(world, world);
+                case PARALLEL:
+                    return new ParallelLightPropagator(world, world, ForkJoinPool.commonPool());
+                default:
+                    return new NoopLightPropagator(world, world);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FirstLightState {
+
+        @Param({"FLAT", "MOUNTAINS", "CAVES", "TORCHES"})
+        public WorldFixture fixture;
+
+        @Param({"MINECRAFT", "PARALLEL", "NOOP"})
+        public PropagatorType propagatorType;
+
+        @Param({"SOURCES_AND_EDGES", "ALL_BLOCKS"})
+        public FirstLightHandler.SeedMode seedMode;
+
+        BoxWorldAccessTestImpl world;
+        LightPropagator propagator;
+        int[] skySeeds;
+        int[] blockSeeds;
+        // light values right after first light, before propagating from the seeds
+        byte[] skyLight;
+        byte[] blockLight;
+        // rebuilt before each invocation, the propagator reads them to the end
+        final Vec3List skyList = new Vec3List(4096);
+        final Vec3List blockList = new Vec3List(4096);
+
+        @Setup
+        public void setup() {
+            world = fixture.create();
+            propagator = propagatorType.create(world);
+            // first light of all chunks, as if they were just generated: the heightmap doesn't know about them yet
+            setAllLoaded(world, false);
+            world.updateHeightMaps();
+            setAllLoaded(world, true);
+            Vec3List sky = new Vec3List(4096);
+            Vec3List block = new Vec3List(4096);
+            new FirstLightHandler(world, seedMode).apply(WorldFixture.allChunks(), sky, block);
+            world.updateHeightMaps();
+            skySeeds = toArray(sky);
+            blockSeeds = toArray(block);
+            // SOURCES_AND_EDGES already writes sky light above the surface, it must not be lost between invocations
+            int volume = world.sizeX() * world.sizeY() * world.sizeZ();
+            skyLight = new byte[volume];
+            blockLight = new byte[volume];
+            int i = 0;
+            for (int x = 0; x < world.sizeX(); x++) {
+                for (int y = 0; y < world.sizeY(); y++) {
+                    for (int z = 0; z < world.sizeZ(); z++) {
+                        skyLight[i] = (byte) world.getLight(x, y, z, LightType.SKY);
+                        blockLight[i] = (byte) world.getLight(x, y, z, LightType.BLOCK);
+                        i++;
+                    }
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            int i = 0;
+            for (int x = 0; x < world.sizeX(); x++) {
+                for (int y = 0; y < world.sizeY(); y++) {
+                    for (int z = 0; z < world.sizeZ(); z++) {
+                        world.setLight(x, y, z, skyLight[i], LightType.SKY);
+                        world.setLight(x, y, z, blockLight[i], LightType.BLOCK);
+                        i++;
+                    }
+                }
+            }
+            fillList(skyList, skySeeds);
+            fillList(blockList, blockSeeds);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BlockUpdateState {
+
+        @Param({"FLAT", "MOUNTAINS", "CAVES", "TORCHES"})
+        public WorldFixture fixture;
+
+        @Param({"MINECRAFT", "PARALLEL", "NOOP"})
+        public PropagatorType propagatorType;
+
+        BoxWorldAccessTestImpl world;
+        LightPropagator propagator;
+        int x, y, z;
+        boolean lit;
+
+        @Setup
+        public void setup() {
+            world = fixture.create();
+            propagator = propagatorType.create(world);
+            Vec3List sky = new Vec3List(4096);
+            Vec3List block = new Vec3List(4096);
+            new FirstLightHandler(world).apply(WorldFixture.allChunks(), sky, block);
+            propagator.update(sky, EnumSet.of(LightType.SKY));
+            propagator.update(block, EnumSet.of(LightType.BLOCK));
+
+            // the air block closest above the middle of the world
+            x = world.sizeX() / 2;
+            z = world.sizeZ() / 2;
+            y = world.sizeY() / 2;
+            while (y < world.sizeY() - 1 && world.isOpaque(x, y, z)) {
+                y++;
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void firstLight(FirstLightState state) {
+        state.propagator.update(state.skyList, EnumSet.of(LightType.SKY));
+        state.propagator.update(state.blockList, EnumSet.of(LightType.BLOCK));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void toggleTorch(BlockUpdateState state) {
+        state.lit = !state.lit;
+        state.world.setBlockSource(state.x, state.y, state.z, state.lit ? 14 : 0);
+        state.propagator.update(state.x, state.y, state.z, EnumSet.of(LightType.BLOCK));
+    }
+
+    private static int[] toArray(Vec3List list) {
+        int[] coords = new int[3 * 1024];
+        int size = 0;
+        while (list.next()) {
+            if (size + 3 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            coords[size++] = list.getX();
+            coords[size++] = list.getY();
+            coords[size++] = list.getZ();
+        }
+        return Arrays.copyOf(coords, size);
+    }
+
+    private static void fillList(Vec3List list, int[] coords) {
+        list.clear();
+        for (int i = 0; i < coords.length; i += 3) {
+            list.add(coords[i], coords[i + 1], coords[i + 2]);
+        }
+    }
+
+    private static void setAllLoaded(BoxWorldAccessTestImpl world, boolean loaded) {
+        for (int x = 0; x < WorldFixture.CHUNKS_X; x++) {
+            for (int y = 0; y < WorldFixture.CHUNKS_Y; y++) {
+                for (int z = 0; z < WorldFixture.CHUNKS_Z; z++) {
+                    world.setChunkLoaded(x, y, z, loaded);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.benchmark;
+
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures filling a {@link Vec3List} and draining it again, starting from the smallest size so that growing is included, and the same
+ * with one list that is kept and cleared between uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Vec3ListBenchmark {
+
+    @Param({"16", "4096", "262144"})
+    public int size;
+
+    private final Vec3List reused = new Vec3List(1);
+
+    @Benchmark
+    public int addAndDrain() {
+        Vec3List list = new Vec3List(1);
+        for (int i = 0; i < size; i++) {
+            list.add(i, i >> 4, -i);
+        }
+        int sum = 0;
+        while (list.next()) {
+            sum += list.getX() + list.getY() + list.getZ();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int addAndDrainReused() {
+        Vec3List list = reused;
+        list.clear();
+        for (int i = 0; i < size; i++) {
+            list.add(i, i >> 4, -i);
+        }
+        int sum = 0;
+        while (list.next()) {
+            sum += list.getX() + list.getY() + list.getZ();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.benchmark;
+
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated worlds used by benchmarks. All of them are deterministic, so results are comparable between runs.
+ */
+public enum WorldFixture {
+    /**
+     * Solid ground up to y = 63, air above.
+     */
+    FLAT {
+        @Override void generate(BoxWorldAccessTestImpl world, Random rand) {
+            fillBelow(world, (x, z) -> 63);
+        }
+    },
+    /**
+     * Terrain with large height differences, so that a lot of light spreads sideways.
+     */
+    MOUNTAINS {
+        @Override void generate(BoxWorldAccessTestImpl world, Random rand) {
+            fillBelow(world, (x, z) -> (int) (60 + 25 * Math.sin(x * 0.11) * Math.cos(z * 0.07) + 12 * Math.sin((x + z) * 0.31)));
+        }
+    },
+    /**
+     * Flat ground up to y = 95 with random tunnels through it, some of them open to the surface.
+     */
+    CAVES {
+        @Override void generate(BoxWorldAccessTestImpl world, Random rand) {
+            fillBelow(world, (x, z) -> 95);
+            carveCaves(world, rand);
+        }
+    },
+    /**
+     * The same as {@link #CAVES}, with a torch on the floor of every few cave blocks.
+     */
+    TORCHES {
+        @Override void generate(BoxWorldAccessTestImpl world, Random rand) {
+            CAVES.generate(world, rand);
+            for (int x = 0; x < world.sizeX(); x++) {
+                for (int z = 0; z < world.sizeZ(); z++) {
+                    for (int y = 1; y < 95; y++) {
+                        if (!world.isOpaque(x, y, z) && world.isOpaque(x, y - 1, z) && rand.nextInt(8) == 0) {
+                            world.setBlockSource(x, y, z, 14);
+                        }
+                    }
+                }
+            }
+        }
+    };
+
+    public static final int CHUNKS_X = 6, CHUNKS_Y = 8, CHUNKS_Z = 6;
+
+    abstract void generate(BoxWorldAccessTestImpl world, Random rand);
+
+    /**
+     * Creates a new world with this fixture. Light values are not initialized.
+     */
+    public BoxWorldAccessTestImpl create() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(CHUNKS_X, CHUNKS_Y, CHUNKS_Z);
+        generate(world, new Random(ordinal()));
+        return world;
+    }
+
+    public static List<ChunkPos> allChunks() {
+        List<ChunkPos> chunks = new ArrayList<>();
+        for (int x = 0; x < CHUNKS_X; x++) {
+            for (int y = 0; y < CHUNKS_Y; y++) {
+                for (int z = 0; z < CHUNKS_Z; z++) {
+                    chunks.add(new ChunkPos(x, y, z));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static void fillBelow(BoxWorldAccessTestImpl world, HeightFunction height) {
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                int top = Math.min(height.getHeight(x, z), world.sizeY() - 1);
+                for (int y = 0; y <= top; y++) {
+                    world.setOpaque(x, y, z, true);
+                }
+            }
+        }
+    }
+
+    private static void carveCaves(BoxWorldAccessTestImpl world, Random rand) {
+        for (int i = 0; i < 40; i++) {
+            double x = rand.nextInt(world.sizeX());
+            double y = 10 + rand.nextInt(90);
+            double z = rand.nextInt(world.sizeZ());
+            double yaw = rand.nextDouble() * Math.PI * 2;
+            double pitch = (rand.nextDouble() - 0.5) * 0.5;
+            for (int step = 0; step < 80; step++) {
+                carveSphere(world, (int) x, (int) y, (int) z, 2 + rand.nextInt(2));
+                x += Math.cos(yaw) * Math.cos(pitch);
+                y += Math.sin(pitch);
+                z += Math.sin(yaw) * Math.cos(pitch);
+                yaw += (rand.nextDouble() - 0.5) * 0.6;
+                pitch = Math.max(-0.6, Math.min(0.6, pitch + (rand.nextDouble() - 0.5) * 0.3));
+            }
+        }
+    }
+
+    private static void carveSphere(BoxWorldAccessTestImpl world, int cx, int cy, int cz, int radius) {
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    if (dx * dx + dy * dy + dz * dz <= radius * radius
+                        && world.contains(cx + dx, cy + dy, cz + dz) && cy + dy > 0) {
+                        world.setOpaque(cx + dx, cy + dy, cz + dz, false);
+                    }
+                }
+            }
+        }
+    }
+
+    private interface HeightFunction {
+
+        int getHeight(int x, int z);
+    }
+}
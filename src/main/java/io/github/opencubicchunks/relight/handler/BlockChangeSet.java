@@ -0,0 +1,83 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.handler;
+
+import io.github.opencubicchunks.relight.util.Vec3IndexMap;
+
+import java.util.Arrays;
+
+/**
+ * Insertion ordered set of block positions, each with the light relevant state the block had when it was first added.
+ * Reusable after {@link #clear()}.
+ */
+class BlockChangeSet {
+
+    private final Vec3IndexMap positions = new Vec3IndexMap();
+    // opacity and light source of each entry, by index in positions
+    private int[] states = new int[16 * 2];
+
+    /**
+     * Adds the position if it's not in the set yet. Otherwise the state it was added with is kept.
+     */
+    void add(int x, int y, int z, int opacity, int lightSource) {
+        int size = positions.size();
+        int idx = positions.add(x, y, z);
+        if (idx < size) {
+            return;
+        }
+        if (idx * 2 >= states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[idx * 2] = opacity;
+        states[idx * 2 + 1] = lightSource;
+    }
+
+    int size() {
+        return positions.size();
+    }
+
+    int getX(int idx) {
+        return positions.getX(idx);
+    }
+
+    int getY(int idx) {
+        return positions.getY(idx);
+    }
+
+    int getZ(int idx) {
+        return positions.getZ(idx);
+    }
+
+    int getOpacity(int idx) {
+        return states[idx * 2];
+    }
+
+    int getLightSource(int idx) {
+        return states[idx * 2 + 1];
+    }
+
+    void clear() {
+        positions.clear();
+    }
+}
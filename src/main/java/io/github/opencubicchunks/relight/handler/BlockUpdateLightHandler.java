@@ -23,6 +23,254 @@
  */
 package io.github.opencubicchunks.relight.handler;
 
+import io.github.opencubicchunks.relight.heightmap.PackedColumnHeights;
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.util.BlockPosSet;
+import io.github.opencubicchunks.relight.util.LightStatsListener;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightRegionCache;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.util.EnumSet;
+
+/**
+ * Finds positions to update after light sources or opacity of already lit blocks changed.
+ * <p>
+ * Only the changed blocks and their neighbors are added, the propagator finds everything else they affect. Darkening from them can't
+ * reach further than {@link LightPropagator#MAX_VALUE} blocks, light levels drop by at least 1 per block. The exception is sky light
+ * directly below a block that became the top of it's column or stopped being it, all blocks that gained or lost the sky as light
+ * source are added too.
+ * <p>
+ * Changes can also be queued over a tick with {@link #queueChange(int, int, int)} and updated together with
+ * {@link #flush(LightPropagator)}, which merges repeated changes of the same block and drops blocks that ended up the same as before.
+ * <p>
+ * Chunks are looked up in {@link WorldAccess} directly instead of through a {@link LightRegionCache}. Each change reads a few blocks
+ * of one or two chunks, and changes in a batch can be anywhere in the world, so a cached region would be mostly empty and has to be
+ * cleared whenever chunks load or unload between updates. The propagator caches the chunks around the seeds it's given.
+ * <p>
+ * Not thread safe.
+ */
 public class BlockUpdateLightHandler {
 
+    private static final int[] DX = {0, -1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, 0, -1, 1};
+
+    private final WorldAccess dataAccess;
+    private final BlockChangeSet queuedChanges = new BlockChangeSet();
+    // reused by flush
+    private final Vec3List changed = new Vec3List(64);
+    private final Vec3List flushSky = new Vec3List(64 * 7);
+    private final Vec3List flushBlock = new Vec3List(64 * 7);
+    private final BlockPosSet flushPositions = new BlockPosSet();
+    private final Vec3List flushSeeds = new Vec3List(64 * 7);
+
+    private LightStatsListener statsListener;
+
+    public BlockUpdateLightHandler(WorldAccess dataAccess) {
+        this.dataAccess = dataAccess;
+    }
+
+    /**
+     * Sets the listener to report statistics of each call of {@code apply} and {@link #flush(LightPropagator)} to, or null to stop
+     * collecting them. Reports only the number of output positions, the propagator used by flush reports its own statistics.
+     */
+    public void setStatsListener(LightStatsListener listener) {
+        this.statsListener = listener;
+    }
+
+    /**
+     * Calculates list of block positions to update for all changed blocks. Must be called after the heightmap has been updated for the
+     * changes, but before any light values changed.
+     */
+    public void apply(Vec3List changedBlocks, Vec3List outputSky, Vec3List outputBlock) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        int startSize = outputSky.size() + outputBlock.size();
+        applyAll(changedBlocks, outputSky, outputBlock);
+        if (listener != null) {
+            reportStats(listener, startTime, outputSky.size() + outputBlock.size() - startSize);
+        }
+    }
+
+    /**
+     * Calculates list of block positions to update for a single changed block. Must be called after the heightmap has been updated for
+     * the change, but before any light values changed.
+     */
+    public void apply(int blockX, int blockY, int blockZ, Vec3List outputSky, Vec3List outputBlock) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        int startSize = outputSky.size() + outputBlock.size();
+        applySingle(blockX, blockY, blockZ, outputSky, outputBlock);
+        if (listener != null) {
+            reportStats(listener, startTime, outputSky.size() + outputBlock.size() - startSize);
+        }
+    }
+
+    private void applyAll(Vec3List changedBlocks, Vec3List outputSky, Vec3List outputBlock) {
+        while (changedBlocks.next()) {
+            applySingle(changedBlocks.getX(), changedBlocks.getY(), changedBlocks.getZ(), outputSky, outputBlock);
+        }
+    }
+
+    private void applySingle(int blockX, int blockY, int blockZ, Vec3List outputSky, Vec3List outputBlock) {
+        if (!dataAccess.isChunkLoaded(blockX >> 4, blockY >> 4, blockZ >> 4)) {
+            return;
+        }
+        addNeighbors(blockX, blockY, blockZ, outputSky, outputBlock);
+        addSkyColumn(blockX, blockY, blockZ, outputSky);
+    }
+
+    /**
+     * Same as {@link #apply(int, int, int, Vec3List, Vec3List)}, for callers that know the heightmap top of the column from before the
+     * change, for example from {@link PackedColumnHeights#setAndDiff(int, int, int)}. Blocks that gained or lost the sky as light source
+     * are then added directly, without reading light values to find them.
+     */
+    public void apply(int blockX, int blockY, int blockZ, int oldTopY, Vec3List outputSky, Vec3List outputBlock) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        int startSize = outputSky.size() + outputBlock.size();
+        applyWithOldTop(blockX, blockY, blockZ, oldTopY, outputSky, outputBlock);
+        if (listener != null) {
+            reportStats(listener, startTime, outputSky.size() + outputBlock.size() - startSize);
+        }
+    }
+
+    private void applyWithOldTop(int blockX, int blockY, int blockZ, int oldTopY, Vec3List outputSky, Vec3List outputBlock) {
+        if (!dataAccess.isChunkLoaded(blockX >> 4, blockY >> 4, blockZ >> 4)) {
+            return;
+        }
+        addNeighbors(blockX, blockY, blockZ, outputSky, outputBlock);
+        int newTopY = dataAccess.getHeightMap(blockX >> 4, blockZ >> 4).getTopY(blockX & 0xF, blockZ & 0xF);
+        // blocks above the lower and up to the higher top, the ones in unloaded chunks are not lit yet anyway
+        int minY = Math.min(oldTopY, newTopY);
+        int checkedChunkY = Integer.MIN_VALUE;
+        for (int y = Math.max(oldTopY, newTopY); y > minY; y--) {
+            if (y >> 4 != checkedChunkY) {
+                if (!dataAccess.isChunkLoaded(blockX >> 4, y >> 4, blockZ >> 4)) {
+                    return;
+                }
+                checkedChunkY = y >> 4;
+            }
+            outputSky.add(blockX, y, blockZ);
+        }
+    }
+
+    private void addNeighbors(int blockX, int blockY, int blockZ, Vec3List outputSky, Vec3List outputBlock) {
+        for (int i = 0; i < DX.length; i++) {
+            int x = blockX + DX[i];
+            int y = blockY + DY[i];
+            int z = blockZ + DZ[i];
+            if (i == 0 || dataAccess.isChunkLoaded(x >> 4, y >> 4, z >> 4)) {
+                outputSky.add(x, y, z);
+                outputBlock.add(x, y, z);
+            }
+        }
+    }
+
+    /**
+     * Queues a block change to be updated by the next {@link #flush(LightPropagator)}. Must be called before the block is changed, light
+     * source and opacity of the block before the first change in this batch are stored to find out if it actually changed.
+     */
+    public void queueChange(int blockX, int blockY, int blockZ) {
+        LightChunk chunk = dataAccess.getLightChunkIfLoaded(blockX >> 4, blockY >> 4, blockZ >> 4);
+        if (chunk == null) {
+            return;
+        }
+        queuedChanges.add(blockX, blockY, blockZ,
+            chunk.getOpacity(blockX, blockY, blockZ), chunk.getLightSource(blockX, blockY, blockZ, LightType.BLOCK));
+    }
+
+    /**
+     * Returns the number of distinct blocks queued since the last flush.
+     */
+    public int getQueuedChangeCount() {
+        return queuedChanges.size();
+    }
+
+    /**
+     * Updates light for all queued changes, with a single propagator update for both light types. Blocks that are in an unloaded chunk or have
+     * the same opacity and light source as when they were first queued are skipped. Must be called after the heightmap has been updated
+     * for the changes.
+     */
+    public void flush(LightPropagator propagator) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        changed.clear();
+        try {
+            for (int i = 0; i < queuedChanges.size(); i++) {
+                int x = queuedChanges.getX(i);
+                int y = queuedChanges.getY(i);
+                int z = queuedChanges.getZ(i);
+                LightChunk chunk = dataAccess.getLightChunkIfLoaded(x >> 4, y >> 4, z >> 4);
+                if (chunk == null) {
+                    continue;
+                }
+                if (chunk.getOpacity(x, y, z) == queuedChanges.getOpacity(i)
+                    && chunk.getLightSource(x, y, z, LightType.BLOCK) == queuedChanges.getLightSource(i)) {
+                    continue;
+                }
+                changed.add(x, y, z);
+            }
+        } finally {
+            queuedChanges.clear();
+        }
+        if (changed.size() == 0) {
+            return;
+        }
+        flushSky.clear();
+        flushBlock.clear();
+        applyAll(changed, flushSky, flushBlock);
+        // both light types are updated from every position, so each one is needed only once
+        flushPositions.clear();
+        flushSeeds.clear();
+        while (flushSky.next()) {
+            flushPositions.add(flushSky.getX(), flushSky.getY(), flushSky.getZ());
+        }
+        while (flushBlock.next()) {
+            flushPositions.add(flushBlock.getX(), flushBlock.getY(), flushBlock.getZ());
+        }
+        flushPositions.drainTo(flushSeeds);
+        int seeded = flushSeeds.size();
+        propagator.update(flushSeeds, EnumSet.allOf(LightType.class));
+        if (listener != null) {
+            reportStats(listener, startTime, seeded);
+        }
+    }
+
+    private void reportStats(LightStatsListener listener, long startTime, int seeded) {
+        listener.onUpdate(this, new LightUpdateStats(seeded, 0, 0, 0, 0, System.nanoTime() - startTime));
+    }
+
+    /**
+     * Adds blocks below the changed one that gained or lost the sky as light source. These still have their old light value, so the scan
+     * stops at the first block which doesn't have to change.
+     */
+    private void addSkyColumn(int blockX, int blockY, int blockZ, Vec3List outputSky) {
+        int topY = dataAccess.getHeightMap(blockX >> 4, blockZ >> 4).getTopY(blockX & 0xF, blockZ & 0xF);
+        if (blockY < topY) {
+            return;
+        }
+        // if the block is the new top, everything below that is still fully lit lost the sky,
+        // otherwise everything down to the new top that isn't fully lit gained it
+        boolean isTop = blockY == topY;
+        LightChunk chunk = null;
+        // the block below is already added as a neighbor
+        for (int y = blockY - 2; isTop || y > topY; y--) {
+            if (chunk == null || y >> 4 != chunk.getY()) {
+                chunk = dataAccess.getLightChunkIfLoaded(blockX >> 4, y >> 4, blockZ >> 4);
+                if (chunk == null) {
+                    return;
+                }
+            }
+            boolean fullyLit = chunk.getLight(blockX, y, blockZ, LightType.SKY) == LightPropagator.MAX_VALUE;
+            if (isTop != fullyLit) {
+                return;
+            }
+            outputSky.add(blockX, y, blockZ);
+        }
+    }
 }
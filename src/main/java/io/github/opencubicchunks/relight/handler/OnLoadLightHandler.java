@@ -23,6 +23,214 @@
  */
 package io.github.opencubicchunks.relight.handler;
 
+import io.github.opencubicchunks.relight.heightmap.HeightMap;
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightStatsListener;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightRegionCache;
+import io.github.opencubicchunks.relight.world.PendingEdgeStore;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds positions to update when already lit chunks are loaded next to chunks that were lit without them.
+ * <p>
+ * Light inside each chunk is assumed to be correct on it's own, only the seams between chunks need to be repaired. The propagator
+ * spreads light out of the seeds into both sides of a seam, also from seeds in uniformly lit chunks, so only faces of the loaded chunks
+ * next to a loaded neighbor are added, at most 6 * 256 blocks per chunk. Pending edges are the same inner faces. Faces between two chunks
+ * loaded at the same time are added only once.
+ * <p>
+ * Sky light is also checked in each column of the loaded chunks, where it's 15 exactly above the heightmap top. Blocks in the loaded
+ * chunks that don't match this, and blocks below them that were lit by sky before the loaded chunk raised the top, are added.
+ * <p>
+ * With a {@link PendingEdgeStore}, only the pending edges of each loaded chunk are added instead of whole faces. This is only correct if
+ * all light updates and first light of chunks since the chunk was unloaded used the same store.
+ * <p>
+ * Chunks are looked up in {@link WorldAccess} directly instead of through a {@link LightRegionCache}. Only the loaded chunks and
+ * their direct neighbors are accessed, each of them once or twice, so there are no repeated lookups for a cache to save.
+ * <p>
+ * Not thread safe.
+ */
 public class OnLoadLightHandler {
 
+    private final WorldAccess dataAccess;
+    private final PendingEdgeStore pendingEdges;
+
+    // reused for every call, only contains chunks during apply
+    private final Set<ChunkPos> loadedChunks = new HashSet<>();
+    private final Vec3List edges = new Vec3List(256);
+
+    private LightStatsListener statsListener;
+
+    public OnLoadLightHandler(WorldAccess dataAccess) {
+        this(dataAccess, null);
+    }
+
+    public OnLoadLightHandler(WorldAccess dataAccess, PendingEdgeStore pendingEdges) {
+        this.dataAccess = dataAccess;
+        this.pendingEdges = pendingEdges;
+    }
+
+    /**
+     * Sets the listener to report statistics of each call to, or null to stop collecting them. Reports the number of output positions
+     * and loaded chunks processed.
+     */
+    public void setStatsListener(LightStatsListener listener) {
+        this.statsListener = listener;
+    }
+
+    /**
+     * Calculates list of block positions to update for the given newly loaded chunks. Must be called after the chunks are loaded and
+     * the heightmap has been updated for them.
+     */
+    public void apply(Collection<ChunkPos> chunks, Vec3List outputSky, Vec3List outputBlock) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        int startSize = outputSky.size() + outputBlock.size();
+        int processed = 0;
+        loadedChunks.addAll(chunks);
+        try {
+            for (ChunkPos pos : chunks) {
+                if (!dataAccess.isChunkLoaded(pos)) {
+                    continue;
+                }
+                processed++;
+                if (pendingEdges == null) {
+                    addFaces(pos, outputSky, outputBlock);
+                } else {
+                    addPendingEdges(pos, outputSky, outputBlock);
+                }
+                addSkyColumns(pos, outputSky);
+            }
+        } finally {
+            loadedChunks.clear();
+        }
+        if (listener != null) {
+            listener.onUpdate(this, new LightUpdateStats(outputSky.size() + outputBlock.size() - startSize, 0, 0, processed, 0,
+                System.nanoTime() - startTime));
+        }
+    }
+
+    private void addFaces(ChunkPos pos, Vec3List outputSky, Vec3List outputBlock) {
+        int minX = pos.minBlockX();
+        int minY = pos.minBlockY();
+        int minZ = pos.minBlockZ();
+        // for faces between chunks loaded together, the face of the chunk with higher coordinate is added
+        if (dataAccess.isChunkLoaded(pos.getX() - 1, pos.getY(), pos.getZ())) {
+            addFaceX(minX, minY, minZ, outputSky, outputBlock);
+        }
+        if (isLoadedBefore(pos.add(1, 0, 0))) {
+            addFaceX(minX + 15, minY, minZ, outputSky, outputBlock);
+        }
+        if (dataAccess.isChunkLoaded(pos.getX(), pos.getY() - 1, pos.getZ())) {
+            addFaceY(minX, minY, minZ, outputSky, outputBlock);
+        }
+        if (isLoadedBefore(pos.add(0, 1, 0))) {
+            addFaceY(minX, minY + 15, minZ, outputSky, outputBlock);
+        }
+        if (dataAccess.isChunkLoaded(pos.getX(), pos.getY(), pos.getZ() - 1)) {
+            addFaceZ(minX, minY, minZ, outputSky, outputBlock);
+        }
+        if (isLoadedBefore(pos.add(0, 0, 1))) {
+            addFaceZ(minX, minY, minZ + 15, outputSky, outputBlock);
+        }
+    }
+
+    private void addPendingEdges(ChunkPos pos, Vec3List outputSky, Vec3List outputBlock) {
+        if (!pendingEdges.hasEdges(pos)) {
+            return;
+        }
+        edges.clear();
+        pendingEdges.drainTo(pos, edges);
+        while (edges.next()) {
+            outputSky.add(edges.getX(), edges.getY(), edges.getZ());
+            outputBlock.add(edges.getX(), edges.getY(), edges.getZ());
+        }
+    }
+
+    private boolean isLoadedBefore(ChunkPos pos) {
+        return dataAccess.isChunkLoaded(pos) && !loadedChunks.contains(pos);
+    }
+
+    private static void addFaceX(int x, int minY, int minZ, Vec3List outputSky, Vec3List outputBlock) {
+        for (int dy = 0; dy < 16; dy++) {
+            for (int dz = 0; dz < 16; dz++) {
+                outputSky.add(x, minY + dy, minZ + dz);
+                outputBlock.add(x, minY + dy, minZ + dz);
+            }
+        }
+    }
+
+    private static void addFaceY(int minX, int y, int minZ, Vec3List outputSky, Vec3List outputBlock) {
+        for (int dx = 0; dx < 16; dx++) {
+            for (int dz = 0; dz < 16; dz++) {
+                outputSky.add(minX + dx, y, minZ + dz);
+                outputBlock.add(minX + dx, y, minZ + dz);
+            }
+        }
+    }
+
+    private static void addFaceZ(int minX, int minY, int z, Vec3List outputSky, Vec3List outputBlock) {
+        for (int dx = 0; dx < 16; dx++) {
+            for (int dy = 0; dy < 16; dy++) {
+                outputSky.add(minX + dx, minY + dy, z);
+                outputBlock.add(minX + dx, minY + dy, z);
+            }
+        }
+    }
+
+    private void addSkyColumns(ChunkPos pos, Vec3List outputSky) {
+        LightChunk chunk = dataAccess.getLightChunk(pos);
+        HeightMap heightMap = dataAccess.getHeightMap(pos.getX(), pos.getZ());
+        for (int dx = 0; dx < 16; dx++) {
+            for (int dz = 0; dz < 16; dz++) {
+                int x = pos.blockX(dx);
+                int z = pos.blockZ(dz);
+                int topY = heightMap.getTopY(dx, dz);
+                for (int dy = 15; dy >= 0; dy--) {
+                    int y = pos.blockY(dy);
+                    if (!isSkyLightValid(chunk, x, y, z, topY)) {
+                        outputSky.add(x, y, z);
+                    }
+                }
+                addSkyColumnBelow(pos, x, z, topY, outputSky);
+            }
+        }
+    }
+
+    /**
+     * Adds blocks below the chunk that still have sky light from before the chunk was loaded, down to the first block that is correct.
+     */
+    private void addSkyColumnBelow(ChunkPos pos, int x, int z, int topY, Vec3List outputSky) {
+        LightChunk chunk = null;
+        for (int y = pos.minBlockY() - 1; ; y--) {
+            if (chunk == null || y >> 4 != chunk.getY()) {
+                ChunkPos below = new ChunkPos(pos.getX(), y >> 4, pos.getZ());
+                // chunks loaded in this batch are checked on their own
+                if (!dataAccess.isChunkLoaded(below) || loadedChunks.contains(below)) {
+                    return;
+                }
+                chunk = dataAccess.getLightChunk(below);
+            }
+            if (isSkyLightValid(chunk, x, y, z, topY)) {
+                return;
+            }
+            outputSky.add(x, y, z);
+        }
+    }
+
+    /**
+     * Returns false if the sky light value of the block can't be correct for the given heightmap top. Only blocks above the top have sky
+     * as light source, nothing else can have the maximum light value.
+     */
+    private static boolean isSkyLightValid(LightChunk chunk, int x, int y, int z, int topY) {
+        return (chunk.getLight(x, y, z, LightType.SKY) == LightPropagator.MAX_VALUE) == (y > topY);
+    }
 }
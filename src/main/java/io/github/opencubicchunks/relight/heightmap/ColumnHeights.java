@@ -29,6 +29,13 @@ public class ColumnHeights implements HeightMap {
     private final int[] heights = new int[16 * 16];
 
     public ColumnHeights() {
+        clear();
+    }
+
+    /**
+     * Resets all heights to the initial state, so that the instance can be reused for a different column.
+     */
+    public void clear() {
         Arrays.fill(this.heights, Integer.MIN_VALUE);
     }
 
@@ -43,4 +50,28 @@ public class ColumnHeights implements HeightMap {
     public boolean exists(int localX, int localZ) {
         return getTopY(localX, localZ) != Integer.MIN_VALUE;
     }
+
+    /**
+     * Sets heights of columns that don't have any yet from the opacity mask of a cube, in the format of
+     * {@code LightChunk.getOpacityMask}. When called for cubes of a column from top to bottom, the result is the highest opaque block.
+     */
+    public void addCube(long[] opacityMask, int cubeMinY) {
+        // each word of a y layer covers 64 columns, 4 rows of constant z
+        for (int word = 0; word < 4; word++) {
+            long pending = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (this.heights[word << 6 | bit] == Integer.MIN_VALUE) {
+                    pending |= 1L << bit;
+                }
+            }
+            for (int dy = 15; dy >= 0 && pending != 0; dy--) {
+                long found = opacityMask[dy << 2 | word] & pending;
+                pending &= ~found;
+                while (found != 0) {
+                    this.heights[word << 6 | Long.numberOfTrailingZeros(found)] = cubeMinY + dy;
+                    found &= found - 1;
+                }
+            }
+        }
+    }
 }
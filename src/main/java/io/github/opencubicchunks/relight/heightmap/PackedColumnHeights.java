@@ -0,0 +1,118 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.heightmap;
+
+import java.util.Arrays;
+
+/**
+ * Heightmap of one column storing heights as 16-bit offsets from a base Y, which covers any column within 32767 blocks of the base. If a
+ * height doesn't fit, the whole column switches to plain int storage.
+ * <p>
+ * Columns without any opaque block have height {@link Integer#MIN_VALUE}, like {@link ColumnHeights}.
+ */
+public class PackedColumnHeights implements HeightMap {
+
+    private static final short NO_HEIGHT = Short.MIN_VALUE;
+
+    private final int baseY;
+    // null once the column no longer fits, heights are then in unpacked
+    private short[] packed = new short[16 * 16];
+    private int[] unpacked;
+
+    public PackedColumnHeights() {
+        this(0);
+    }
+
+    /**
+     * @param baseY the height offsets are relative to, ideally close to the expected surface
+     */
+    public PackedColumnHeights(int baseY) {
+        this.baseY = baseY;
+        Arrays.fill(packed, NO_HEIGHT);
+    }
+
+    @Override public int getTopY(int localX, int localZ) {
+        int idx = localX | localZ << 4;
+        if (packed == null) {
+            return unpacked[idx];
+        }
+        short offset = packed[idx];
+        return offset == NO_HEIGHT ? Integer.MIN_VALUE : baseY + offset;
+    }
+
+    public void setHeight(int localX, int localZ, int newY) {
+        int idx = localX | localZ << 4;
+        if (packed != null) {
+            if (newY == Integer.MIN_VALUE) {
+                packed[idx] = NO_HEIGHT;
+                return;
+            }
+            long offset = (long) newY - baseY;
+            if (offset > Short.MIN_VALUE && offset <= Short.MAX_VALUE) {
+                packed[idx] = (short) offset;
+                return;
+            }
+            unpack();
+        }
+        unpacked[idx] = newY;
+    }
+
+    private void unpack() {
+        int[] heights = new int[16 * 16];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = getTopY(i & 0xF, i >> 4);
+        }
+        unpacked = heights;
+        packed = null;
+    }
+
+    /**
+     * Sets the height and returns the old and new height packed into a long, use {@link #diffOldY(long)} and {@link #diffNewY(long)}
+     * to read them. Blocks with Y above the lower and up to the higher of the two changed their sky light source.
+     */
+    public long setAndDiff(int localX, int localZ, int newY) {
+        int oldY = getTopY(localX, localZ);
+        setHeight(localX, localZ, newY);
+        return (long) oldY << 32 | (newY & 0xFFFFFFFFL);
+    }
+
+    public static int diffOldY(long diff) {
+        return (int) (diff >> 32);
+    }
+
+    public static int diffNewY(long diff) {
+        return (int) diff;
+    }
+
+    public boolean exists(int localX, int localZ) {
+        return getTopY(localX, localZ) != Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns true if all heights are still stored as 16-bit offsets.
+     */
+    public boolean isPacked() {
+        return packed != null;
+    }
+}
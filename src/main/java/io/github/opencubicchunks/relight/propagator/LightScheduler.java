@@ -0,0 +1,154 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.propagator;
+
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects light update batches and runs them through a {@link LightPropagator} within a time budget, closest to the focus points (for
+ * example chunks players are in) first. Batches at the same distance run in the order they were scheduled, batches that don't fit into
+ * the budget stay queued for the next call.
+ * <p>
+ * A batch that started is always finished, so the budget can be exceeded by up to the time of one batch. At least one batch runs on
+ * each call with positive budget, so the queue always makes progress.
+ * <p>
+ * Not thread safe.
+ */
+public class LightScheduler {
+
+    private static final Comparator<Batch> BY_PRIORITY = (a, b) -> {
+        if (a.distanceSq != b.distanceSq) {
+            return Long.compare(a.distanceSq, b.distanceSq);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    private final LightPropagator propagator;
+    private final LongSupplier nanoTime;
+
+    private final List<Batch> pending = new ArrayList<>();
+    private final List<ChunkPos> focusPoints = new ArrayList<>();
+    private long nextSequence = 0;
+
+    public LightScheduler(LightPropagator propagator) {
+        this(propagator, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime the clock used for the time budget, in nanoseconds
+     */
+    public LightScheduler(LightPropagator propagator, LongSupplier nanoTime) {
+        this.propagator = propagator;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Queues positions to update, the chunk is used to prioritize the batch. The list must not be modified after it's scheduled.
+     */
+    public void schedule(ChunkPos chunk, Vec3List positions, EnumSet<LightType> types) {
+        pending.add(new Batch(chunk, positions, EnumSet.copyOf(types), nextSequence++));
+    }
+
+    /**
+     * Replaces focus points, batches closer to any of them run first. Without focus points batches run in the order they were scheduled.
+     */
+    public void setFocusPoints(Collection<ChunkPos> points) {
+        focusPoints.clear();
+        focusPoints.addAll(points);
+    }
+
+    /**
+     * Runs queued batches in priority order until the time budget is used up or nothing is left. Returns the number of batches run.
+     */
+    public int run(long budgetNanos) {
+        if (budgetNanos <= 0 || pending.isEmpty()) {
+            return 0;
+        }
+        long start = nanoTime.getAsLong();
+        // focus points may have moved since the last call
+        for (Batch batch : pending) {
+            batch.distanceSq = distanceSq(batch.chunk);
+        }
+        pending.sort(BY_PRIORITY);
+        int count = 0;
+        try {
+            while (count < pending.size() && (count == 0 || nanoTime.getAsLong() - start < budgetNanos)) {
+                Batch batch = pending.get(count);
+                // counted before running, so that a failing batch isn't retried forever
+                count++;
+                propagator.update(batch.positions, batch.types);
+            }
+        } finally {
+            pending.subList(0, count).clear();
+        }
+        return count;
+    }
+
+    /**
+     * Runs all queued batches in priority order, regardless of time.
+     */
+    public void runAll() {
+        run(Long.MAX_VALUE);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private long distanceSq(ChunkPos pos) {
+        long min = Long.MAX_VALUE;
+        for (ChunkPos focus : focusPoints) {
+            long dx = pos.getX() - focus.getX();
+            long dy = pos.getY() - focus.getY();
+            long dz = pos.getZ() - focus.getZ();
+            min = Math.min(min, dx * dx + dy * dy + dz * dz);
+        }
+        return focusPoints.isEmpty() ? 0 : min;
+    }
+
+    private static final class Batch {
+
+        final ChunkPos chunk;
+        final Vec3List positions;
+        final EnumSet<LightType> types;
+        final long sequence;
+        long distanceSq;
+
+        Batch(ChunkPos chunk, Vec3List positions, EnumSet<LightType> types, long sequence) {
+            this.chunk = chunk;
+            this.positions = positions;
+            this.types = types;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -23,18 +23,684 @@
  */
 package io.github.opencubicchunks.relight.propagator;
 
+import io.github.opencubicchunks.relight.util.DualLightLevelQueue;
+import io.github.opencubicchunks.relight.util.LightLevelQueue;
+import io.github.opencubicchunks.relight.util.LightStatsListener;
 import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.PosUtil;
 import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
+import io.github.opencubicchunks.relight.world.LightRegionCache;
+import io.github.opencubicchunks.relight.world.PendingEdgeStore;
+import io.github.opencubicchunks.relight.world.WorldAccess;
 
+import java.util.Arrays;
 import java.util.EnumSet;
 
+/**
+ * Minecraft-like flood fill light propagator. Each update runs in two phases: first light is removed from all blocks that may have been
+ * lit through the updated positions (darkening), then light is spread again from the edges of the darkened area, from light sources and
+ * into the updated positions (brightening).
+ * <p>
+ * Both phases process the brightest queued blocks first, so a block is only queued again if a brighter path to it is found after it
+ * was already reached, which can only happen through blocks with opacity above 1.
+ * <p>
+ * Blocks in unloaded chunks are never read or written, light stops at the edge of loaded area. If a {@link PendingEdgeStore} is given,
+ * blocks of unloaded chunks that darkening or brightening couldn't reach are added to it.
+ * <p>
+ * Queued positions are packed into longs with Y relative to a cube aligned origin. Light can't travel further than 2 * {@link #MAX_VALUE}
+ * blocks from the updated positions, so if they don't all fit into the packed Y range with that margin, they are updated in multiple
+ * passes with different origins.
+ * <p>
+ * Chunks around the updated positions are cached in a {@link LightRegionCache} for the duration of each pass.
+ * <p>
+ * When both light types are updated, they are propagated together: each queue entry carries both values, so neighbors are looked up
+ * and opacity is computed once for both.
+ * <p>
+ * Seeds in chunks that report uniform light source and opacity skip the flood fill where the result is known: a chunk with light source
+ * 15 everywhere is filled at once and only its faces are spread from, and seeds in a fully opaque chunk that already has its light
+ * source value everywhere are skipped.
+ */
 public class MinecraftChunkAwareLightPropagator implements LightPropagator {
 
-    @Override public void update(Vec3List posList, EnumSet<LightType> types) {
+    private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, -1, 1};
+
+    // darkening and the following brightening can each spread light up to MAX_VALUE blocks away
+    private static final int SEED_MARGIN_Y = 2 * MAX_VALUE + 2;
+    // the same distance in chunks, rounded up
+    private static final int REGION_MARGIN_CHUNKS = (SEED_MARGIN_Y + 15) >> 4;
+    // above this the seeds are too spread out for a region to be worth it, chunks are then looked up one by one
+    private static final int MAX_REGION_CHUNKS = 16 * 16 * 16;
+
+    // how seeds of a light type in a chunk are handled, see uniformMode
+    private static final int UNIFORM_NONE = 0;
+    private static final int UNIFORM_SKIP = 1;
+    private static final int UNIFORM_FILL = 2;
+
+    private final LightDataWriter writer;
+    private final PendingEdgeStore pendingEdges;
+
+    // seeds keep their full Y, it can be outside the packed range until an origin close to them is picked
+    private Vec3List seeds = new Vec3List(64);
+    private Vec3List deferredSeeds = new Vec3List(64);
+    private final LightLevelQueue darkenQueue = new LightLevelQueue(64);
+    private final LightLevelQueue brightenQueue = new LightLevelQueue(64);
+    private final DualLightLevelQueue dualDarkenQueue = new DualLightLevelQueue(64);
+    private final DualLightLevelQueue dualBrightenQueue = new DualLightLevelQueue(64);
+
+    private final LightRegionCache region;
+    // the last accessed chunk, most neighbours are in the same chunk as the block they are accessed from
+    private boolean hasCachedChunk = false;
+    private int cachedChunkX, cachedChunkY, cachedChunkZ;
+    private LightChunk cachedChunk;
+
+    // uniform mode of the last chunk a seed of each light type was in
+    private final LightChunk[] uniformModeChunk = new LightChunk[LightType.values().length];
+    private final int[] uniformMode = new int[LightType.values().length];
+
+    private int originY;
+
+    private LightStatsListener statsListener;
+    // statistics of the current update
+    private long dequeued, requeued;
+
+    public MinecraftChunkAwareLightPropagator(WorldAccess world, LightDataWriter writer) {
+        this(world, writer, null);
+    }
+
+    /**
+     * @param pendingEdges where to store edges of unloaded chunks, or null to ignore them
+     */
+    public MinecraftChunkAwareLightPropagator(WorldAccess world, LightDataWriter writer, PendingEdgeStore pendingEdges) {
+        this.writer = writer;
+        this.pendingEdges = pendingEdges;
+        this.region = new LightRegionCache(world);
+    }
+
+    /**
+     * Sets the listener to report statistics of each update to, or null to stop collecting them.
+     */
+    public void setStatsListener(LightStatsListener listener) {
+        this.statsListener = listener;
+    }
 
+    @Override public void update(Vec3List posList, EnumSet<LightType> types) {
+        while (posList.next()) {
+            seeds.add(posList.getX(), posList.getY(), posList.getZ());
+        }
+        updateSeeds(types);
     }
 
     @Override public void update(int blockX, int blockY, int blockZ, EnumSet<LightType> types) {
+        seeds.add(blockX, blockY, blockZ);
+        updateSeeds(types);
+    }
+
+    private void updateSeeds(EnumSet<LightType> types) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        long startLookups = region.getLookupCount();
+        int seeded = seeds.size();
+        long cubesTouched = 0;
+        dequeued = requeued = 0;
+        try {
+            while (seeds.size() > 0) {
+                originY = seeds.getY(0) & ~0xF;
+                cacheSeedRegion();
+                long passLookups = region.getLookupCount();
+                if (types.contains(LightType.SKY) && types.contains(LightType.BLOCK)) {
+                    updateBoth();
+                } else {
+                    for (LightType type : types) {
+                        updateType(type);
+                    }
+                }
+                // without a region every lookup is counted, as there is no cheap way to tell if the chunk was already accessed
+                int resolved = region.getResolvedCount();
+                cubesTouched += resolved > 0 ? resolved : region.getLookupCount() - passLookups;
+                deferOutOfRangeSeeds();
+            }
+        } finally {
+            seeds.clear();
+            deferredSeeds.clear();
+            darkenQueue.clear();
+            brightenQueue.clear();
+            dualDarkenQueue.clear();
+            dualBrightenQueue.clear();
+            Arrays.fill(uniformModeChunk, null);
+            hasCachedChunk = false;
+            cachedChunk = null;
+            region.clear();
+        }
+        if (listener != null) {
+            listener.onUpdate(this, new LightUpdateStats(seeded, dequeued, requeued, cubesTouched,
+                region.getLookupCount() - startLookups, System.nanoTime() - startTime));
+        }
+    }
+
+    /**
+     * Sets the cached region to all chunks that light from the seeds in range of this pass can reach.
+     */
+    private void cacheSeedRegion() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (int i = 0, size = seeds.size(); i < size; i++) {
+            int y = seeds.getY(i);
+            if (!isSeedInRange(y)) {
+                continue;
+            }
+            minX = Math.min(minX, seeds.getX(i) >> 4);
+            minY = Math.min(minY, y >> 4);
+            minZ = Math.min(minZ, seeds.getZ(i) >> 4);
+            maxX = Math.max(maxX, seeds.getX(i) >> 4);
+            maxY = Math.max(maxY, y >> 4);
+            maxZ = Math.max(maxZ, seeds.getZ(i) >> 4);
+        }
+        hasCachedChunk = false;
+        cachedChunk = null;
+        long volume = (long) (maxX - minX + 1 + 2 * REGION_MARGIN_CHUNKS)
+            * (maxY - minY + 1 + 2 * REGION_MARGIN_CHUNKS)
+            * (maxZ - minZ + 1 + 2 * REGION_MARGIN_CHUNKS);
+        if (volume > MAX_REGION_CHUNKS) {
+            region.clear();
+            return;
+        }
+        region.setRegion(
+            minX - REGION_MARGIN_CHUNKS, minY - REGION_MARGIN_CHUNKS, minZ - REGION_MARGIN_CHUNKS,
+            maxX + REGION_MARGIN_CHUNKS, maxY + REGION_MARGIN_CHUNKS, maxZ + REGION_MARGIN_CHUNKS);
+    }
+
+    private void deferOutOfRangeSeeds() {
+        for (int i = 0, size = seeds.size(); i < size; i++) {
+            if (!isSeedInRange(seeds.getY(i))) {
+                deferredSeeds.add(seeds.getX(i), seeds.getY(i), seeds.getZ(i));
+            }
+        }
+        Vec3List processed = seeds;
+        processed.clear();
+        seeds = deferredSeeds;
+        deferredSeeds = processed;
+    }
+
+    private boolean isSeedInRange(int blockY) {
+        int dy = blockY - originY;
+        return dy >= PosUtil.MIN_Y + SEED_MARGIN_Y && dy <= PosUtil.MAX_Y - SEED_MARGIN_Y;
+    }
+
+    private long pack(int blockX, int blockY, int blockZ) {
+        return PosUtil.packPos(blockX, blockY - originY, blockZ);
+    }
+
+    private void updateType(LightType type) {
+        // light may have changed since the last pass
+        Arrays.fill(uniformModeChunk, null);
+        // the seed queue has to be read twice, so it's iterated by index and not drained
+        for (int i = 0, size = seeds.size(); i < size; i++) {
+            int x = seeds.getX(i);
+            int y = seeds.getY(i);
+            int z = seeds.getZ(i);
+            if (!isSeedInRange(y)) {
+                continue;
+            }
+            LightChunk chunk = chunkAt(x, y, z);
+            if (chunk == null || isUniformHandled(chunk, type, false)) {
+                continue;
+            }
+            int light = chunk.getLight(x, y, z, type);
+            if (light > 0) {
+                writer.setLight(x, y, z, 0, type);
+                darkenQueue.add(pack(x, y, z), light);
+            }
+        }
+        darken(type);
+
+        for (int i = 0, size = seeds.size(); i < size; i++) {
+            int x = seeds.getX(i);
+            int y = seeds.getY(i);
+            int z = seeds.getZ(i);
+            if (!isSeedInRange(y)) {
+                continue;
+            }
+            LightChunk chunk = chunkAt(x, y, z);
+            if (chunk == null) {
+                continue;
+            }
+            if (isUniformHandled(chunk, type, false)) {
+                // light of the chunk is already right, but seeds on its faces still have to spread it into the neighbors
+                int light = chunk.getLight(x, y, z, type);
+                if (light > 1 && isOnChunkFace(x, y, z)) {
+                    brightenQueue.add(pack(x, y, z), light);
+                }
+                continue;
+            }
+            int light = chunk.getLight(x, y, z, type);
+            int newLight = Math.max(light, pullLight(chunk, x, y, z, type));
+            if (newLight > light) {
+                writer.setLight(x, y, z, newLight, type);
+                brightenQueue.add(pack(x, y, z), newLight);
+            }
+        }
+        brighten(type);
+    }
+
+    /**
+     * Returns the light value the given block would have based on it's own light source and light values of it's neighbors.
+     */
+    private int pullLight(LightChunk chunk, int x, int y, int z, LightType type) {
+        int value = chunk.getLightSource(x, y, z, type);
+        for (int i = 0; i < 6 && value < MAX_VALUE; i++) {
+            int nx = x + DX[i];
+            int ny = y + DY[i];
+            int nz = z + DZ[i];
+            LightChunk neighbor = chunkAt(nx, ny, nz);
+            if (neighbor == null) {
+                continue;
+            }
+            int neighborLight = neighbor.getLight(nx, ny, nz, type);
+            if (neighborLight <= value + 1) {
+                continue;
+            }
+            // the chunk may have changed, it's always the one of the block light goes into
+            chunk = chunkAt(x, y, z);
+            int opacity = Math.max(1, chunk.getOpacityBetween(nx, ny, nz, x, y, z));
+            value = Math.max(value, neighborLight - opacity);
+        }
+        return value;
+    }
+
+    private void darken(LightType type) {
+        while (darkenQueue.next()) {
+            dequeued++;
+            long pos = darkenQueue.getPos();
+            int x = PosUtil.unpackX(pos);
+            int y = PosUtil.unpackY(pos) + originY;
+            int z = PosUtil.unpackZ(pos);
+            int oldLight = darkenQueue.getLevel();
+
+            for (int i = 0; i < 6; i++) {
+                int nx = x + DX[i];
+                int ny = y + DY[i];
+                int nz = z + DZ[i];
+                LightChunk neighbor = chunkAt(nx, ny, nz);
+                if (neighbor == null) {
+                    // it may have been lit from here too
+                    if (oldLight > 1) {
+                        addPendingEdge(nx, ny, nz, x, y, z);
+                    }
+                    continue;
+                }
+                int neighborLight = neighbor.getLight(nx, ny, nz, type);
+                if (neighborLight == 0) {
+                    continue;
+                }
+                if (neighborLight < oldLight) {
+                    // may have been lit from here
+                    writer.setLight(nx, ny, nz, 0, type);
+                    darkenQueue.add(pack(nx, ny, nz), neighborLight);
+                } else {
+                    // lit from somewhere else, spread it back into the darkened area
+                    brightenQueue.add(pack(nx, ny, nz), neighborLight);
+                }
+            }
+            int source = chunkAt(x, y, z).getLightSource(x, y, z, type);
+            if (source > 0) {
+                writer.setLight(x, y, z, source, type);
+                brightenQueue.add(pack(x, y, z), source);
+            }
+        }
+    }
+
+    private void brighten(LightType type) {
+        while (brightenQueue.next()) {
+            dequeued++;
+            long pos = brightenQueue.getPos();
+            int x = PosUtil.unpackX(pos);
+            int y = PosUtil.unpackY(pos) + originY;
+            int z = PosUtil.unpackZ(pos);
+            int light = brightenQueue.getLevel();
+            if (chunkAt(x, y, z).getLight(x, y, z, type) != light) {
+                // already overwritten by a brighter path or darkened later, the newer queue entry will handle it
+                requeued++;
+                continue;
+            }
+            for (int i = 0; i < 6; i++) {
+                int nx = x + DX[i];
+                int ny = y + DY[i];
+                int nz = z + DZ[i];
+                LightChunk neighbor = chunkAt(nx, ny, nz);
+                if (neighbor == null) {
+                    if (light > 1) {
+                        addPendingEdge(nx, ny, nz, x, y, z);
+                    }
+                    continue;
+                }
+                int newLight = light - Math.max(1, neighbor.getOpacityBetween(x, y, z, nx, ny, nz));
+                if (newLight <= 0) {
+                    continue;
+                }
+                if (neighbor.getLight(nx, ny, nz, type) < newLight) {
+                    writer.setLight(nx, ny, nz, newLight, type);
+                    brightenQueue.add(pack(nx, ny, nz), newLight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #updateType(LightType)} for both light types at once.
+     */
+    private void updateBoth() {
+        Arrays.fill(uniformModeChunk, null);
+        for (int i = 0, size = seeds.size(); i < size; i++) {
+            int x = seeds.getX(i);
+            int y = seeds.getY(i);
+            int z = seeds.getZ(i);
+            if (!isSeedInRange(y)) {
+                continue;
+            }
+            LightChunk chunk = chunkAt(x, y, z);
+            if (chunk == null) {
+                continue;
+            }
+            boolean skipSky = isUniformHandled(chunk, LightType.SKY, true);
+            boolean skipBlock = isUniformHandled(chunk, LightType.BLOCK, true);
+            int sky = skipSky ? 0 : chunk.getLight(x, y, z, LightType.SKY);
+            int block = skipBlock ? 0 : chunk.getLight(x, y, z, LightType.BLOCK);
+            if (sky > 0) {
+                writer.setLight(x, y, z, 0, LightType.SKY);
+            }
+            if (block > 0) {
+                writer.setLight(x, y, z, 0, LightType.BLOCK);
+            }
+            if ((sky | block) != 0) {
+                dualDarkenQueue.add(pack(x, y, z), sky, block);
+            }
+        }
+        darkenBoth();
+
+        for (int i = 0, size = seeds.size(); i < size; i++) {
+            int x = seeds.getX(i);
+            int y = seeds.getY(i);
+            int z = seeds.getZ(i);
+            if (!isSeedInRange(y)) {
+                continue;
+            }
+            LightChunk chunk = chunkAt(x, y, z);
+            if (chunk == null) {
+                continue;
+            }
+            boolean skipSky = isUniformHandled(chunk, LightType.SKY, true);
+            boolean skipBlock = isUniformHandled(chunk, LightType.BLOCK, true);
+            int sky = chunk.getLight(x, y, z, LightType.SKY);
+            int block = chunk.getLight(x, y, z, LightType.BLOCK);
+            int newSky = 0, newBlock = 0;
+            if (!skipSky || !skipBlock) {
+                int pulled = pullBoth(chunk, x, y, z);
+                newSky = !skipSky && pulled >> 4 > sky ? pulled >> 4 : 0;
+                newBlock = !skipBlock && (pulled & 0xF) > block ? pulled & 0xF : 0;
+            }
+            if (newSky > 0) {
+                writer.setLight(x, y, z, newSky, LightType.SKY);
+            }
+            if (newBlock > 0) {
+                writer.setLight(x, y, z, newBlock, LightType.BLOCK);
+            }
+            // skipped light is already right, but seeds on the chunk faces still have to spread it into the neighbors
+            if (isOnChunkFace(x, y, z)) {
+                newSky = skipSky ? sky : newSky;
+                newBlock = skipBlock ? block : newBlock;
+            }
+            if ((newSky | newBlock) != 0) {
+                dualBrightenQueue.add(pack(x, y, z), newSky, newBlock);
+            }
+        }
+        brightenBoth();
+    }
+
+    private static boolean isOnChunkFace(int x, int y, int z) {
+        return ((x + 1) & 0xF) <= 1 || ((y + 1) & 0xF) <= 1 || ((z + 1) & 0xF) <= 1;
+    }
+
+    /**
+     * Returns true if light of the given type in the chunk is known without a flood fill, so seeds in it don't have to be darkened or
+     * searched, filling the chunk first if needed. Seeds on the faces of such a chunk still have to be spread from, light in the neighbors
+     * may depend on them.
+     */
+    private boolean isUniformHandled(LightChunk chunk, LightType type, boolean dual) {
+        int mode = uniformMode(chunk, type);
+        if (mode == UNIFORM_FILL) {
+            fillUniform(chunk, type, dual);
+            uniformMode[type.ordinal()] = UNIFORM_SKIP;
+        }
+        return mode != UNIFORM_NONE;
+    }
+
+    /**
+     * Light of a chunk with light source 15 everywhere is 15 everywhere, so it can be filled. Light of a fully opaque chunk is its light
+     * source everywhere because no light can get into it, so if it already has that value, there is nothing to do.
+     */
+    private int uniformMode(LightChunk chunk, LightType type) {
+        int t = type.ordinal();
+        if (uniformModeChunk[t] == chunk) {
+            return uniformMode[t];
+        }
+        int mode = UNIFORM_NONE;
+        int source = chunk.getUniformLightSource(type);
+        if (source == MAX_VALUE) {
+            mode = chunk.isLightUniform(type, MAX_VALUE) ? UNIFORM_SKIP : UNIFORM_FILL;
+        } else if (source >= 0 && chunk.getUniformOpacity() >= MAX_VALUE && chunk.isLightUniform(type, source)) {
+            mode = UNIFORM_SKIP;
+        }
+        uniformModeChunk[t] = chunk;
+        uniformMode[t] = mode;
+        return mode;
+    }
+
+    /**
+     * Fills the chunk with the maximum light value. Light could only increase, so nothing has to be darkened and only the faces of the
+     * chunk have to be spread from.
+     */
+    private void fillUniform(LightChunk chunk, LightType type, boolean dual) {
+        writer.fillChunk(chunk.getX(), chunk.getY(), chunk.getZ(), MAX_VALUE, type);
+        int minX = chunk.getX() << 4, minY = chunk.getY() << 4, minZ = chunk.getZ() << 4;
+        for (int a = 0; a < 16; a++) {
+            for (int b = 0; b < 16; b++) {
+                queueFilled(pack(minX, minY + a, minZ + b), type, dual);
+                queueFilled(pack(minX + 15, minY + a, minZ + b), type, dual);
+                queueFilled(pack(minX + a, minY, minZ + b), type, dual);
+                queueFilled(pack(minX + a, minY + 15, minZ + b), type, dual);
+                queueFilled(pack(minX + a, minY + b, minZ), type, dual);
+                queueFilled(pack(minX + a, minY + b, minZ + 15), type, dual);
+            }
+        }
+    }
+
+    private void queueFilled(long pos, LightType type, boolean dual) {
+        if (!dual) {
+            brightenQueue.add(pos, MAX_VALUE);
+        } else if (type == LightType.SKY) {
+            dualBrightenQueue.add(pos, MAX_VALUE, 0);
+        } else {
+            dualBrightenQueue.add(pos, 0, MAX_VALUE);
+        }
+    }
+
+    /**
+     * Same as {@link #pullLight(LightChunk, int, int, int, LightType)} for both light types, returns sky light in the high nibble and
+     * block light in the low nibble.
+     */
+    private int pullBoth(LightChunk chunk, int x, int y, int z) {
+        int sky = chunk.getLightSource(x, y, z, LightType.SKY);
+        int block = chunk.getLightSource(x, y, z, LightType.BLOCK);
+        for (int i = 0; i < 6 && (sky < MAX_VALUE || block < MAX_VALUE); i++) {
+            int nx = x + DX[i];
+            int ny = y + DY[i];
+            int nz = z + DZ[i];
+            LightChunk neighbor = chunkAt(nx, ny, nz);
+            if (neighbor == null) {
+                continue;
+            }
+            int neighborSky = neighbor.getLight(nx, ny, nz, LightType.SKY);
+            int neighborBlock = neighbor.getLight(nx, ny, nz, LightType.BLOCK);
+            if (neighborSky <= sky + 1 && neighborBlock <= block + 1) {
+                continue;
+            }
+            chunk = chunkAt(x, y, z);
+            int opacity = Math.max(1, chunk.getOpacityBetween(nx, ny, nz, x, y, z));
+            sky = Math.max(sky, neighborSky - opacity);
+            block = Math.max(block, neighborBlock - opacity);
+        }
+        return sky << 4 | block;
+    }
+
+    private void darkenBoth() {
+        while (dualDarkenQueue.next()) {
+            dequeued++;
+            long pos = dualDarkenQueue.getPos();
+            int x = PosUtil.unpackX(pos);
+            int y = PosUtil.unpackY(pos) + originY;
+            int z = PosUtil.unpackZ(pos);
+            int oldSky = dualDarkenQueue.getSkyLevel();
+            int oldBlock = dualDarkenQueue.getBlockLevel();
+
+            for (int i = 0; i < 6; i++) {
+                int nx = x + DX[i];
+                int ny = y + DY[i];
+                int nz = z + DZ[i];
+                LightChunk neighbor = chunkAt(nx, ny, nz);
+                if (neighbor == null) {
+                    if (oldSky > 1 || oldBlock > 1) {
+                        addPendingEdge(nx, ny, nz, x, y, z);
+                    }
+                    continue;
+                }
+                int darkSky = 0, brightSky = 0;
+                if (oldSky > 0) {
+                    int neighborSky = neighbor.getLight(nx, ny, nz, LightType.SKY);
+                    if (neighborSky < oldSky) {
+                        darkSky = neighborSky;
+                    } else {
+                        brightSky = neighborSky;
+                    }
+                }
+                int darkBlock = 0, brightBlock = 0;
+                if (oldBlock > 0) {
+                    int neighborBlock = neighbor.getLight(nx, ny, nz, LightType.BLOCK);
+                    if (neighborBlock < oldBlock) {
+                        darkBlock = neighborBlock;
+                    } else {
+                        brightBlock = neighborBlock;
+                    }
+                }
+                if (darkSky > 0) {
+                    writer.setLight(nx, ny, nz, 0, LightType.SKY);
+                }
+                if (darkBlock > 0) {
+                    writer.setLight(nx, ny, nz, 0, LightType.BLOCK);
+                }
+                if ((darkSky | darkBlock) != 0) {
+                    dualDarkenQueue.add(pack(nx, ny, nz), darkSky, darkBlock);
+                }
+                if ((brightSky | brightBlock) != 0) {
+                    dualBrightenQueue.add(pack(nx, ny, nz), brightSky, brightBlock);
+                }
+            }
+            LightChunk chunk = chunkAt(x, y, z);
+            int sourceSky = oldSky > 0 ? chunk.getLightSource(x, y, z, LightType.SKY) : 0;
+            int sourceBlock = oldBlock > 0 ? chunk.getLightSource(x, y, z, LightType.BLOCK) : 0;
+            if (sourceSky > 0) {
+                writer.setLight(x, y, z, sourceSky, LightType.SKY);
+            }
+            if (sourceBlock > 0) {
+                writer.setLight(x, y, z, sourceBlock, LightType.BLOCK);
+            }
+            if ((sourceSky | sourceBlock) != 0) {
+                dualBrightenQueue.add(pos, sourceSky, sourceBlock);
+            }
+        }
+    }
+
+    private void brightenBoth() {
+        while (dualBrightenQueue.next()) {
+            dequeued++;
+            long pos = dualBrightenQueue.getPos();
+            int x = PosUtil.unpackX(pos);
+            int y = PosUtil.unpackY(pos) + originY;
+            int z = PosUtil.unpackZ(pos);
+            LightChunk chunk = chunkAt(x, y, z);
+            // each value may have been overwritten separately, the newer queue entry will handle it
+            boolean stale = false;
+            int sky = dualBrightenQueue.getSkyLevel();
+            if (sky > 0 && chunk.getLight(x, y, z, LightType.SKY) != sky) {
+                sky = 0;
+                stale = true;
+            }
+            int block = dualBrightenQueue.getBlockLevel();
+            if (block > 0 && chunk.getLight(x, y, z, LightType.BLOCK) != block) {
+                block = 0;
+                stale = true;
+            }
+            // counted once per entry, like in the single type queues
+            if (stale) {
+                requeued++;
+            }
+            if (sky <= 1 && block <= 1) {
+                continue;
+            }
+            for (int i = 0; i < 6; i++) {
+                int nx = x + DX[i];
+                int ny = y + DY[i];
+                int nz = z + DZ[i];
+                LightChunk neighbor = chunkAt(nx, ny, nz);
+                if (neighbor == null) {
+                    addPendingEdge(nx, ny, nz, x, y, z);
+                    continue;
+                }
+                int opacity = Math.max(1, neighbor.getOpacityBetween(x, y, z, nx, ny, nz));
+                int newSky = sky - opacity;
+                if (newSky > 0 && neighbor.getLight(nx, ny, nz, LightType.SKY) < newSky) {
+                    writer.setLight(nx, ny, nz, newSky, LightType.SKY);
+                } else {
+                    newSky = 0;
+                }
+                int newBlock = block - opacity;
+                if (newBlock > 0 && neighbor.getLight(nx, ny, nz, LightType.BLOCK) < newBlock) {
+                    writer.setLight(nx, ny, nz, newBlock, LightType.BLOCK);
+                } else {
+                    newBlock = 0;
+                }
+                if ((newSky | newBlock) != 0) {
+                    dualBrightenQueue.add(pack(nx, ny, nz), newSky, newBlock);
+                }
+            }
+        }
+    }
+
+    private void addPendingEdge(int toX, int toY, int toZ, int fromX, int fromY, int fromZ) {
+        if (pendingEdges != null) {
+            pendingEdges.addEdge(toX, toY, toZ, fromX, fromY, fromZ);
+        }
+    }
 
+    /**
+     * Returns the chunk containing the given block, or null if it's not loaded.
+     */
+    private LightChunk chunkAt(int blockX, int blockY, int blockZ) {
+        int chunkX = blockX >> 4;
+        int chunkY = blockY >> 4;
+        int chunkZ = blockZ >> 4;
+        if (hasCachedChunk && chunkX == cachedChunkX && chunkY == cachedChunkY && chunkZ == cachedChunkZ) {
+            return cachedChunk;
+        }
+        cachedChunkX = chunkX;
+        cachedChunkY = chunkY;
+        cachedChunkZ = chunkZ;
+        cachedChunk = region.getChunk(chunkX, chunkY, chunkZ);
+        hasCachedChunk = true;
+        return cachedChunk;
     }
 }
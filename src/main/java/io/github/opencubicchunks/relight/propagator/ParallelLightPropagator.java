@@ -0,0 +1,561 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.propagator;
+
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightLevelQueue;
+import io.github.opencubicchunks.relight.util.LightStatsListener;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
+import io.github.opencubicchunks.relight.world.PendingEdgeStore;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Flood fill light propagator that spreads the work of each update over the threads of an {@link Executor}. Propagation is the same as in
+ * {@link MinecraftChunkAwareLightPropagator}: all light that may have come through the updated positions is removed first, then light
+ * is spread again. Each of these phases finishes in all cubes before the next one starts.
+ * <p>
+ * Work is split by cube. At most one task processes a cube at a time and only that task reads or writes light values of the cube, so
+ * no locking of light data is needed. When light crosses into another cube, the entry is posted to that cube's inbox and the cube is
+ * scheduled for processing if it isn't already. Light only changes monotonically within each phase, so the order in which cubes are
+ * processed doesn't affect the result.
+ * <p>
+ * The given {@link WorldAccess} and {@link LightChunk}s must allow concurrent reads and the {@link LightDataWriter} concurrent writes to
+ * different cubes. The calling thread waits for the update to finish, so it must not be one of the executor's threads.
+ */
+public class ParallelLightPropagator implements LightPropagator {
+
+    private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, -1, 1};
+
+    private final WorldAccess world;
+    private final LightDataWriter writer;
+    private final PendingEdgeStore pendingEdges;
+    private final Executor executor;
+
+    private final ConcurrentHashMap<ChunkPos, Cube> cubes = new ConcurrentHashMap<>();
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    // written only between phases, tasks see them through the happens-before edge of task submission
+    private LightType type;
+    private boolean brightening;
+
+    private final Object taskLock = new Object();
+    private int runningTasks;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private LightStatsListener statsListener;
+    // seeds of the current update
+    private int seeded;
+
+    public ParallelLightPropagator(WorldAccess world, LightDataWriter writer, Executor executor) {
+        this(world, writer, null, executor);
+    }
+
+    /**
+     * @param pendingEdges where to store edges of unloaded chunks, or null to ignore them
+     */
+    public ParallelLightPropagator(WorldAccess world, LightDataWriter writer, PendingEdgeStore pendingEdges, Executor executor) {
+        this.world = world;
+        this.writer = writer;
+        this.pendingEdges = pendingEdges;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the listener to report statistics of each update to, or null to stop collecting them. Counters of all tasks are summed after
+     * the update finished. Each cube is counted once for all phases, and {@link WorldAccess} calls are the lookups of these cubes.
+     */
+    public void setStatsListener(LightStatsListener listener) {
+        this.statsListener = listener;
+    }
+
+    @Override public void update(Vec3List posList, EnumSet<LightType> types) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        try {
+            while (posList.next()) {
+                addSeed(posList.getX(), posList.getY(), posList.getZ());
+            }
+            updateSeeds(types);
+            if (listener != null) {
+                reportStats(listener, startTime);
+            }
+        } finally {
+            cubes.clear();
+            failure.set(null);
+            seeded = 0;
+        }
+    }
+
+    @Override public void update(int blockX, int blockY, int blockZ, EnumSet<LightType> types) {
+        LightStatsListener listener = statsListener;
+        long startTime = listener == null ? 0 : System.nanoTime();
+        try {
+            addSeed(blockX, blockY, blockZ);
+            updateSeeds(types);
+            if (listener != null) {
+                reportStats(listener, startTime);
+            }
+        } finally {
+            cubes.clear();
+            failure.set(null);
+            seeded = 0;
+        }
+    }
+
+    private void addSeed(int x, int y, int z) {
+        seeded++;
+        Cube cube = cubeAt(x >> 4, y >> 4, z >> 4);
+        if (cube.chunk != null) {
+            cube.seeds.add(localIndex(x, y, z));
+        }
+    }
+
+    private void updateSeeds(EnumSet<LightType> types) {
+        for (LightType lightType : types) {
+            this.type = lightType;
+            runPhase(false);
+            runPhase(true);
+        }
+    }
+
+    private void runPhase(boolean brighten) {
+        this.brightening = brighten;
+        // all flags are reset before any task starts, a task could otherwise reach a cube that still looks started from the last phase
+        for (Cube cube : cubes.values()) {
+            cube.started = false;
+        }
+        for (Cube cube : cubes.values()) {
+            if (cube.seeds.size > 0 || (brighten && cube.brightenSeeds.size > 0)) {
+                schedule(cube);
+            }
+        }
+        boolean interrupted = false;
+        synchronized (taskLock) {
+            while (runningTasks > 0) {
+                try {
+                    taskLock.wait();
+                } catch (InterruptedException e) {
+                    // the tasks still use the light data, so the phase has to finish anyway
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Sums the counters of all cubes, all tasks are done at this point so their writes are visible.
+     */
+    private void reportStats(LightStatsListener listener, long startTime) {
+        long dequeued = 0, requeued = 0, worldLookups = 0;
+        for (Cube cube : cubes.values()) {
+            dequeued += cube.dequeued;
+            requeued += cube.requeued;
+            // isChunkLoaded, and getLightChunk for loaded cubes
+            worldLookups += cube.chunk == null ? 1 : 2;
+        }
+        listener.onUpdate(this, new LightUpdateStats(seeded, dequeued, requeued, cubes.size(), worldLookups,
+            System.nanoTime() - startTime));
+    }
+
+    private Cube cubeAt(int cubeX, int cubeY, int cubeZ) {
+        return cubes.computeIfAbsent(new ChunkPos(cubeX, cubeY, cubeZ),
+            pos -> new Cube(pos, world.isChunkLoaded(pos) ? world.getLightChunk(pos) : null));
+    }
+
+    private void schedule(Cube cube) {
+        if (!cube.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (taskLock) {
+            runningTasks++;
+        }
+        try {
+            executor.execute(() -> run(cube));
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            taskFinished();
+        }
+    }
+
+    private void run(Cube cube) {
+        try {
+            Worker worker = workers.get();
+            do {
+                worker.process(cube);
+                cube.scheduled.set(false);
+                // entries posted after the inbox was taken but before the flag was cleared wouldn't schedule the cube again
+            } while (cube.hasInbox() && cube.scheduled.compareAndSet(false, true));
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        } finally {
+            taskFinished();
+        }
+    }
+
+    private void taskFinished() {
+        synchronized (taskLock) {
+            if (--runningTasks == 0) {
+                taskLock.notifyAll();
+            }
+        }
+    }
+
+    private static int localIndex(int x, int y, int z) {
+        return (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF);
+    }
+
+    private static int entry(int index, int level) {
+        return index << 4 | level;
+    }
+
+    private static final class Cube {
+
+        final int cubeX, cubeY, cubeZ;
+        // null if not loaded
+        final LightChunk chunk;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // guarded by this
+        private IntList inbox = new IntList();
+
+        // only accessed by the task processing this cube, or between phases
+        final IntList seeds = new IntList();
+        // entries for the brightening phase found while darkening
+        final IntList brightenSeeds = new IntList();
+        boolean started;
+        // statistics of the current update
+        long dequeued, requeued;
+
+        Cube(ChunkPos pos, LightChunk chunk) {
+            this.cubeX = pos.getX();
+            this.cubeY = pos.getY();
+            this.cubeZ = pos.getZ();
+            this.chunk = chunk;
+        }
+
+        synchronized void post(IntList entries) {
+            inbox.addAll(entries);
+        }
+
+        synchronized boolean hasInbox() {
+            return inbox.size > 0;
+        }
+
+        /**
+         * Swaps the inbox with the given empty list and returns the old inbox.
+         */
+        synchronized IntList takeInbox(IntList empty) {
+            IntList taken = inbox;
+            inbox = empty;
+            return taken;
+        }
+    }
+
+    /**
+     * Per thread scratch state for processing cubes.
+     */
+    private final class Worker {
+
+        private final LightLevelQueue queue = new LightLevelQueue(64);
+        private final IntList[] outgoing = new IntList[6];
+        private final Cube[] neighbors = new Cube[6];
+        private IntList incoming = new IntList();
+
+        private Cube cube;
+        private LightChunk chunk;
+        private int originX, originY, originZ;
+
+        Worker() {
+            for (int i = 0; i < 6; i++) {
+                outgoing[i] = new IntList();
+            }
+        }
+
+        void process(Cube cube) {
+            this.cube = cube;
+            this.chunk = cube.chunk;
+            this.originX = cube.cubeX << 4;
+            this.originY = cube.cubeY << 4;
+            this.originZ = cube.cubeZ << 4;
+            Arrays.fill(neighbors, null);
+            try {
+                IntList taken = cube.takeInbox(incoming);
+                incoming = taken;
+                if (failure.get() != null) {
+                    // another task failed, just drain the inboxes so that the phase ends
+                    return;
+                }
+                if (!cube.started) {
+                    cube.started = true;
+                    if (brightening) {
+                        startBrighten();
+                    } else {
+                        startDarken();
+                    }
+                }
+                for (int i = 0; i < taken.size; i++) {
+                    int e = taken.data[i];
+                    if (brightening) {
+                        brightenRequest(e >>> 4, e & 0xF);
+                    } else {
+                        darkenRequest(e >>> 4, e & 0xF);
+                    }
+                }
+                if (brightening) {
+                    brighten();
+                } else {
+                    darken();
+                }
+                for (int i = 0; i < 6; i++) {
+                    if (outgoing[i].size > 0) {
+                        neighbors[i].post(outgoing[i]);
+                        schedule(neighbors[i]);
+                    }
+                }
+            } finally {
+                incoming.size = 0;
+                queue.clear();
+                for (IntList list : outgoing) {
+                    list.size = 0;
+                }
+                this.cube = null;
+                this.chunk = null;
+            }
+        }
+
+        private void startDarken() {
+            IntList seeds = cube.seeds;
+            for (int i = 0; i < seeds.size; i++) {
+                int index = seeds.data[i];
+                int light = getLight(index);
+                if (light > 0) {
+                    setLight(index, 0);
+                    queue.add(index, light);
+                }
+            }
+        }
+
+        /**
+         * Darkens the block if it may have been lit by a neighbor with the given old light value.
+         */
+        private void darkenRequest(int index, int oldLight) {
+            int light = getLight(index);
+            if (light == 0) {
+                return;
+            }
+            if (light < oldLight) {
+                setLight(index, 0);
+                queue.add(index, light);
+            } else {
+                // lit from somewhere else, spread it back into the darkened area
+                cube.brightenSeeds.add(entry(index, light));
+            }
+        }
+
+        private void darken() {
+            while (queue.next()) {
+                cube.dequeued++;
+                int index = (int) queue.getPos();
+                int oldLight = queue.getLevel();
+                int x = index & 0xF, y = index >>> 8, z = index >>> 4 & 0xF;
+                for (int i = 0; i < 6; i++) {
+                    int nx = x + DX[i], ny = y + DY[i], nz = z + DZ[i];
+                    if (isInCube(nx, ny, nz)) {
+                        darkenRequest(localIndex(nx, ny, nz), oldLight);
+                        continue;
+                    }
+                    Cube neighbor = neighbor(i);
+                    if (neighbor.chunk == null) {
+                        // it may have been lit from here too
+                        if (oldLight > 1) {
+                            addPendingEdge(nx, ny, nz, x, y, z);
+                        }
+                        continue;
+                    }
+                    outgoing[i].add(entry(localIndex(nx, ny, nz), oldLight));
+                }
+                int source = chunk.getLightSource(originX + x, originY + y, originZ + z, type);
+                if (source > 0) {
+                    setLight(index, source);
+                    cube.brightenSeeds.add(entry(index, source));
+                }
+            }
+        }
+
+        private void startBrighten() {
+            IntList seeds = cube.seeds;
+            for (int i = 0; i < seeds.size; i++) {
+                int index = seeds.data[i];
+                int x = index & 0xF, y = index >>> 8, z = index >>> 4 & 0xF;
+                int source = chunk.getLightSource(originX + x, originY + y, originZ + z, type);
+                if (source > getLight(index)) {
+                    setLight(index, source);
+                    queue.add(index, source);
+                }
+                // neighbors spread their light into the seed again, this replaces pulling light from them
+                for (int j = 0; j < 6; j++) {
+                    int nx = x + DX[j], ny = y + DY[j], nz = z + DZ[j];
+                    if (isInCube(nx, ny, nz)) {
+                        brightenRequest(localIndex(nx, ny, nz), 0);
+                    } else if (neighbor(j).chunk != null) {
+                        outgoing[j].add(entry(localIndex(nx, ny, nz), 0));
+                    }
+                }
+            }
+            IntList brightenSeeds = cube.brightenSeeds;
+            for (int i = 0; i < brightenSeeds.size; i++) {
+                int e = brightenSeeds.data[i];
+                queue.add(e >>> 4, e & 0xF);
+            }
+            brightenSeeds.size = 0;
+        }
+
+        /**
+         * Sets light of the block to at least the given value. Level 0 queues the block to spread its current light again.
+         */
+        private void brightenRequest(int index, int newLight) {
+            int light = getLight(index);
+            if (newLight == 0) {
+                if (light > 1) {
+                    queue.add(index, light);
+                }
+            } else if (light < newLight) {
+                setLight(index, newLight);
+                queue.add(index, newLight);
+            }
+        }
+
+        private void brighten() {
+            while (queue.next()) {
+                cube.dequeued++;
+                int index = (int) queue.getPos();
+                int light = queue.getLevel();
+                if (getLight(index) != light) {
+                    // already overwritten by a brighter path, the newer queue entry will handle it
+                    cube.requeued++;
+                    continue;
+                }
+                int x = index & 0xF, y = index >>> 8, z = index >>> 4 & 0xF;
+                for (int i = 0; i < 6; i++) {
+                    int nx = x + DX[i], ny = y + DY[i], nz = z + DZ[i];
+                    boolean inCube = isInCube(nx, ny, nz);
+                    LightChunk target = inCube ? chunk : neighbor(i).chunk;
+                    if (target == null) {
+                        if (light > 1) {
+                            addPendingEdge(nx, ny, nz, x, y, z);
+                        }
+                        continue;
+                    }
+                    int newLight = light - Math.max(1, target.getOpacityBetween(
+                        originX + x, originY + y, originZ + z, originX + nx, originY + ny, originZ + nz));
+                    if (newLight <= 0) {
+                        continue;
+                    }
+                    if (inCube) {
+                        brightenRequest(localIndex(nx, ny, nz), newLight);
+                    } else {
+                        outgoing[i].add(entry(localIndex(nx, ny, nz), newLight));
+                    }
+                }
+            }
+        }
+
+        private boolean isInCube(int x, int y, int z) {
+            return ((x | y | z) & ~0xF) == 0;
+        }
+
+        private Cube neighbor(int direction) {
+            Cube neighbor = neighbors[direction];
+            if (neighbor == null) {
+                neighbor = cubeAt(cube.cubeX + DX[direction], cube.cubeY + DY[direction], cube.cubeZ + DZ[direction]);
+                neighbors[direction] = neighbor;
+            }
+            return neighbor;
+        }
+
+        private int getLight(int index) {
+            return chunk.getLight(originX + (index & 0xF), originY + (index >>> 8), originZ + (index >>> 4 & 0xF), type);
+        }
+
+        private void setLight(int index, int value) {
+            writer.setLight(originX + (index & 0xF), originY + (index >>> 8), originZ + (index >>> 4 & 0xF), value, type);
+        }
+
+        /**
+         * Takes coordinates relative to this cube.
+         */
+        private void addPendingEdge(int toX, int toY, int toZ, int fromX, int fromY, int fromZ) {
+            if (pendingEdges != null) {
+                pendingEdges.addEdge(originX + toX, originY + toY, originZ + toZ, originX + fromX, originY + fromY, originZ + fromZ);
+            }
+        }
+    }
+
+    private static final class IntList {
+
+        int[] data = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size >= data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            if (size + other.size > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + other.size));
+            }
+            System.arraycopy(other.data, 0, data, size, other.size);
+            size += other.size;
+        }
+    }
+}
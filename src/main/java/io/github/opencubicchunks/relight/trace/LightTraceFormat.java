@@ -0,0 +1,165 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.trace;
+
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.NibbleLightChunk;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Constants and helpers for the binary trace format written by {@link LightTraceRecorder}.
+ * <p>
+ * A trace starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per recorded call and {@link #END}. Each record is a
+ * kind byte, the call's inputs, the heightmaps and chunks it accessed as they were before the call, the outputs of handlers, and light
+ * of the loaded chunks after the call. Chunk data is stored as nibble arrays, arrays with the same value everywhere take 2 bytes.
+ */
+final class LightTraceFormat {
+
+    static final int MAGIC = 0x524C5452;
+    static final int VERSION = 1;
+
+    static final byte END = 0;
+    static final byte UPDATE = 1;
+    static final byte FIRST_LIGHT = 2;
+
+    // order of the nibble arrays of a chunk snapshot
+    static final int OPACITY = 0;
+    static final int SKY_SOURCE = 1;
+    static final int BLOCK_SOURCE = 2;
+    static final int SKY_LIGHT = 3;
+    static final int BLOCK_LIGHT = 4;
+    static final int ARRAY_COUNT = 5;
+
+    private static final byte UNIFORM = 0;
+    private static final byte FULL = 1;
+
+    static byte[][] capture(LightChunk chunk) {
+        byte[][] arrays = new byte[ARRAY_COUNT][NibbleLightChunk.ARRAY_SIZE];
+        int minX = chunk.getX() << 4, minY = chunk.getY() << 4, minZ = chunk.getZ() << 4;
+        for (int i = 0; i < 4096; i++) {
+            int x = minX + (i & 0xF), y = minY + (i >> 8), z = minZ + (i >> 4 & 0xF);
+            setNibble(arrays[OPACITY], i, Math.min(15, chunk.getOpacity(x, y, z)));
+            setNibble(arrays[SKY_SOURCE], i, chunk.getLightSource(x, y, z, LightType.SKY));
+            setNibble(arrays[BLOCK_SOURCE], i, chunk.getLightSource(x, y, z, LightType.BLOCK));
+            setNibble(arrays[SKY_LIGHT], i, chunk.getLight(x, y, z, LightType.SKY));
+            setNibble(arrays[BLOCK_LIGHT], i, chunk.getLight(x, y, z, LightType.BLOCK));
+        }
+        return arrays;
+    }
+
+    static byte[] captureLight(LightChunk chunk, LightType type) {
+        byte[] array = new byte[NibbleLightChunk.ARRAY_SIZE];
+        int minX = chunk.getX() << 4, minY = chunk.getY() << 4, minZ = chunk.getZ() << 4;
+        for (int i = 0; i < 4096; i++) {
+            setNibble(array, i, chunk.getLight(minX + (i & 0xF), minY + (i >> 8), minZ + (i >> 4 & 0xF), type));
+        }
+        return array;
+    }
+
+    /**
+     * Sets a nibble of an array that is still 0 at that index.
+     */
+    static void setNibble(byte[] array, int index, int value) {
+        array[index >> 1] |= (value & 0xF) << ((index & 1) << 2);
+    }
+
+    static int getNibble(byte[] array, int index) {
+        return array[index >> 1] >> ((index & 1) << 2) & 0xF;
+    }
+
+    static void writeNibbles(DataOutput out, byte[] array) throws IOException {
+        byte first = array[0];
+        for (int i = 1; i < array.length; i++) {
+            if (array[i] != first) {
+                out.writeByte(FULL);
+                out.write(array);
+                return;
+            }
+        }
+        out.writeByte(UNIFORM);
+        out.writeByte(first);
+    }
+
+    static byte[] readNibbles(DataInput in) throws IOException {
+        byte[] array = new byte[NibbleLightChunk.ARRAY_SIZE];
+        byte encoding = in.readByte();
+        if (encoding == UNIFORM) {
+            Arrays.fill(array, in.readByte());
+        } else if (encoding == FULL) {
+            in.readFully(array);
+        } else {
+            throw new IOException("Unknown nibble array encoding " + encoding);
+        }
+        return array;
+    }
+
+    /**
+     * Writes all positions of the list, which has to be iterated from the start.
+     */
+    static void writePositions(DataOutput out, Vec3List positions) throws IOException {
+        out.writeInt(positions.size());
+        while (positions.next()) {
+            out.writeInt(positions.getX());
+            out.writeInt(positions.getY());
+            out.writeInt(positions.getZ());
+        }
+    }
+
+    static Vec3List readPositions(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Negative position count " + count);
+        }
+        Vec3List positions = new Vec3List(Math.max(1, count));
+        for (int i = 0; i < count; i++) {
+            positions.add(in.readInt(), in.readInt(), in.readInt());
+        }
+        return positions;
+    }
+
+    static int typesToMask(EnumSet<LightType> types) {
+        int mask = 0;
+        for (LightType type : types) {
+            mask |= 1 << type.ordinal();
+        }
+        return mask;
+    }
+
+    static EnumSet<LightType> maskToTypes(int mask) {
+        EnumSet<LightType> types = EnumSet.noneOf(LightType.class);
+        for (LightType type : LightType.values()) {
+            if ((mask & 1 << type.ordinal()) != 0) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.trace;
+
+import static io.github.opencubicchunks.relight.trace.LightTraceFormat.ARRAY_COUNT;
+
+import io.github.opencubicchunks.relight.handler.FirstLightHandler;
+import io.github.opencubicchunks.relight.heightmap.HeightMap;
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.ColumnPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightDataReader;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records calls to {@link LightPropagator#update(Vec3List, EnumSet)} and {@link FirstLightHandler#apply(Collection, Vec3List, Vec3List)}
+ * into a trace that {@link LightTraceReplay} can run again without the game.
+ * <p>
+ * Propagators and handlers must access the world through {@link #getWorld()}, which snapshots each chunk and heightmap the first time
+ * it's accessed during a recorded call, so the trace contains the state before the call of everything the call looked at. Light
+ * written through a writer that doesn't come from {@link #getWorld()} has to go through {@link #wrap(LightDataWriter)}. After the call,
+ * light of all snapshotted chunks is recorded to check replays against.
+ * <p>
+ * Each call is written to the output at once when it finishes, so a trace cut off by a crash is readable up to the last complete call.
+ * Call {@link #finish()} to end the trace. Snapshots are synchronized, so parallel propagators and handlers can be recorded, but only
+ * one call may be recorded at a time.
+ */
+public class LightTraceRecorder {
+
+    private final WorldAccess world;
+    private final DataOutput out;
+    private final RecordingWorld recordingWorld = new RecordingWorld();
+
+    // snapshots of the current call in access order, null value for unloaded chunks
+    private final Map<ChunkPos, byte[][]> chunks = new LinkedHashMap<>();
+    private final Map<ColumnPos, int[]> heightMaps = new LinkedHashMap<>();
+    private boolean recording;
+
+    /**
+     * Writes the trace header to the output.
+     */
+    public LightTraceRecorder(WorldAccess world, DataOutput out) throws IOException {
+        this.world = world;
+        this.out = out;
+        out.writeInt(LightTraceFormat.MAGIC);
+        out.writeInt(LightTraceFormat.VERSION);
+    }
+
+    /**
+     * Returns the world that records what propagators and handlers access during recorded calls.
+     */
+    public WorldAccess getWorld() {
+        return recordingWorld;
+    }
+
+    /**
+     * Returns a writer that snapshots the chunk of each block before writing to it.
+     */
+    public LightDataWriter wrap(LightDataWriter writer) {
+        return (x, y, z, value, type) -> {
+            snapshotChunk(x >> 4, y >> 4, z >> 4);
+            writer.setLight(x, y, z, value, type);
+        };
+    }
+
+    /**
+     * Returns a propagator that records each update before passing it to the given one.
+     */
+    public LightPropagator wrap(LightPropagator propagator) {
+        return (posList, types) -> {
+            Vec3List positions = new Vec3List(Math.max(1, posList.size()));
+            Vec3List recorded = new Vec3List(Math.max(1, posList.size()));
+            while (posList.next()) {
+                positions.add(posList.getX(), posList.getY(), posList.getZ());
+                recorded.add(posList.getX(), posList.getY(), posList.getZ());
+            }
+            beginCall();
+            try {
+                propagator.update(positions, types);
+            } finally {
+                recording = false;
+            }
+            writeCall(record -> {
+                record.writeByte(LightTraceFormat.UPDATE);
+                record.writeByte(LightTraceFormat.typesToMask(types));
+                LightTraceFormat.writePositions(record, recorded);
+            }, null, null);
+        };
+    }
+
+    /**
+     * Calls {@link FirstLightHandler#apply(Collection, Vec3List, Vec3List)} and records it. The handler must have been created with
+     * {@link #getWorld()} and the given seed mode.
+     */
+    public void applyFirstLight(FirstLightHandler handler, FirstLightHandler.SeedMode seedMode, Collection<ChunkPos> newChunks,
+        Vec3List outputSky, Vec3List outputBlock) {
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        beginCall();
+        try {
+            handler.apply(newChunks, sky, block);
+        } finally {
+            recording = false;
+        }
+        Vec3List recordedSky = new Vec3List(Math.max(1, sky.size()));
+        Vec3List recordedBlock = new Vec3List(Math.max(1, block.size()));
+        while (sky.next()) {
+            outputSky.add(sky.getX(), sky.getY(), sky.getZ());
+            recordedSky.add(sky.getX(), sky.getY(), sky.getZ());
+        }
+        while (block.next()) {
+            outputBlock.add(block.getX(), block.getY(), block.getZ());
+            recordedBlock.add(block.getX(), block.getY(), block.getZ());
+        }
+        writeCall(record -> {
+            record.writeByte(LightTraceFormat.FIRST_LIGHT);
+            record.writeByte(seedMode.ordinal());
+            record.writeInt(newChunks.size());
+            for (ChunkPos pos : newChunks) {
+                record.writeInt(pos.getX());
+                record.writeInt(pos.getY());
+                record.writeInt(pos.getZ());
+            }
+        }, recordedSky, recordedBlock);
+    }
+
+    /**
+     * Writes the end of the trace. Nothing can be recorded after that.
+     */
+    public void finish() throws IOException {
+        out.writeByte(LightTraceFormat.END);
+    }
+
+    private void beginCall() {
+        if (recording) {
+            throw new IllegalStateException("Already recording a call");
+        }
+        chunks.clear();
+        heightMaps.clear();
+        recording = true;
+    }
+
+    private void writeCall(RecordWriter header, Vec3List outputSky, Vec3List outputBlock) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+            header.write(record);
+
+            record.writeInt(heightMaps.size());
+            for (Map.Entry<ColumnPos, int[]> entry : heightMaps.entrySet()) {
+                record.writeInt(entry.getKey().getX());
+                record.writeInt(entry.getKey().getZ());
+                for (int topY : entry.getValue()) {
+                    record.writeInt(topY);
+                }
+            }
+            record.writeInt(chunks.size());
+            for (Map.Entry<ChunkPos, byte[][]> entry : chunks.entrySet()) {
+                record.writeInt(entry.getKey().getX());
+                record.writeInt(entry.getKey().getY());
+                record.writeInt(entry.getKey().getZ());
+                byte[][] arrays = entry.getValue();
+                record.writeBoolean(arrays != null);
+                if (arrays != null) {
+                    for (int i = 0; i < ARRAY_COUNT; i++) {
+                        LightTraceFormat.writeNibbles(record, arrays[i]);
+                    }
+                }
+            }
+            if (outputSky != null) {
+                LightTraceFormat.writePositions(record, outputSky);
+                LightTraceFormat.writePositions(record, outputBlock);
+            }
+            // light after the call, to check replays against
+            for (Map.Entry<ChunkPos, byte[][]> entry : chunks.entrySet()) {
+                if (entry.getValue() != null) {
+                    LightChunk chunk = world.getLightChunk(entry.getKey());
+                    LightTraceFormat.writeNibbles(record, LightTraceFormat.captureLight(chunk, LightType.SKY));
+                    LightTraceFormat.writeNibbles(record, LightTraceFormat.captureLight(chunk, LightType.BLOCK));
+                }
+            }
+            record.flush();
+            out.write(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            chunks.clear();
+            heightMaps.clear();
+        }
+    }
+
+    private synchronized void snapshotChunk(int chunkX, int chunkY, int chunkZ) {
+        if (!recording) {
+            return;
+        }
+        ChunkPos pos = new ChunkPos(chunkX, chunkY, chunkZ);
+        if (chunks.containsKey(pos)) {
+            return;
+        }
+        chunks.put(pos, world.isChunkLoaded(pos) ? LightTraceFormat.capture(world.getLightChunk(pos)) : null);
+    }
+
+    private synchronized void snapshotHeightMap(ColumnPos pos, HeightMap heightMap) {
+        if (!recording || heightMaps.containsKey(pos)) {
+            return;
+        }
+        int[] topY = new int[16 * 16];
+        for (int i = 0; i < topY.length; i++) {
+            topY[i] = heightMap.getTopY(i & 0xF, i >> 4);
+        }
+        heightMaps.put(pos, topY);
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private final class RecordingWorld implements WorldAccess {
+
+        @Override public LightDataReader getLightChunk(ChunkPos minPos, ChunkPos maxPos) {
+            LightDataReader reader = world.getLightChunk(minPos, maxPos);
+            return new LightDataReader() {
+                @Override public int getLight(int x, int y, int z, LightType type) {
+                    snapshotChunk(x >> 4, y >> 4, z >> 4);
+                    return reader.getLight(x, y, z, type);
+                }
+
+                @Override public int getLightSource(int x, int y, int z, LightType type) {
+                    snapshotChunk(x >> 4, y >> 4, z >> 4);
+                    return reader.getLightSource(x, y, z, type);
+                }
+            };
+        }
+
+        @Override public LightDataWriter getWriterFor(ChunkPos minPos, ChunkPos maxPos) {
+            return wrap(world.getWriterFor(minPos, maxPos));
+        }
+
+        @Override public HeightMap getHeightMap(ColumnPos pos) {
+            HeightMap heightMap = world.getHeightMap(pos);
+            snapshotHeightMap(pos, heightMap);
+            return heightMap;
+        }
+
+        @Override public boolean isChunkLoaded(int chunkX, int chunkY, int chunkZ) {
+            snapshotChunk(chunkX, chunkY, chunkZ);
+            return world.isChunkLoaded(chunkX, chunkY, chunkZ);
+        }
+
+        @Override public LightChunk getLightChunk(ChunkPos pos) {
+            snapshotChunk(pos.getX(), pos.getY(), pos.getZ());
+            return world.getLightChunk(pos);
+        }
+
+        @Override public LightChunk getLightChunkIfLoaded(int chunkX, int chunkY, int chunkZ) {
+            snapshotChunk(chunkX, chunkY, chunkZ);
+            return world.getLightChunkIfLoaded(chunkX, chunkY, chunkZ);
+        }
+
+        @Override public List<LightChunk> chunksBetween(ColumnPos pos, int start, int end) {
+            List<LightChunk> list = world.chunksBetween(pos, start, end);
+            for (LightChunk chunk : list) {
+                snapshotChunk(chunk.getX(), chunk.getY(), chunk.getZ());
+            }
+            return list;
+        }
+    }
+}
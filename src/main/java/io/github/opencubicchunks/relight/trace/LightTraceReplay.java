@@ -0,0 +1,300 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.trace;
+
+import io.github.opencubicchunks.relight.handler.FirstLightHandler;
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
+import io.github.opencubicchunks.relight.propagator.ParallelLightPropagator;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.ColumnPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs the calls of a trace written by {@link LightTraceRecorder} against a propagator, measuring how long each call takes and comparing
+ * the resulting light with the recorded one.
+ * <p>
+ * Each call runs in a world rebuilt from the snapshots recorded for it, so calls are independent of each other and of the propagator that
+ * was used when recording. First light calls always use {@link FirstLightHandler}, with the seed mode they were recorded with. Traces cut
+ * off in the middle of a call are replayed up to the last complete call.
+ */
+public class LightTraceReplay {
+
+    private final PropagatorFactory propagatorFactory;
+
+    public LightTraceReplay(PropagatorFactory propagatorFactory) {
+        this.propagatorFactory = propagatorFactory;
+    }
+
+    public Report replay(DataInput in) throws IOException {
+        if (in.readInt() != LightTraceFormat.MAGIC) {
+            throw new IOException("Not a light trace");
+        }
+        int version = in.readInt();
+        if (version != LightTraceFormat.VERSION) {
+            throw new IOException("Unsupported light trace version " + version);
+        }
+        Report report = new Report();
+        try {
+            while (true) {
+                byte kind = in.readByte();
+                if (kind == LightTraceFormat.END) {
+                    break;
+                } else if (kind == LightTraceFormat.UPDATE) {
+                    replayUpdate(in, report);
+                } else if (kind == LightTraceFormat.FIRST_LIGHT) {
+                    replayFirstLight(in, report);
+                } else {
+                    throw new IOException("Unknown record kind " + kind);
+                }
+            }
+        } catch (EOFException e) {
+            report.truncated = true;
+        }
+        return report;
+    }
+
+    private void replayUpdate(DataInput in, Report report) throws IOException {
+        EnumSet<LightType> types = LightTraceFormat.maskToTypes(in.readByte());
+        Vec3List positions = LightTraceFormat.readPositions(in);
+        SnapshotWorld world = new SnapshotWorld();
+        List<ChunkPos> loaded = readWorld(in, world);
+        List<byte[]> expected = readLight(in, loaded);
+
+        LightPropagator propagator = propagatorFactory.create(world, world);
+        long start = System.nanoTime();
+        propagator.update(positions, types);
+        long nanos = System.nanoTime() - start;
+
+        report.addCall(nanos, compareLight(world, loaded, expected));
+    }
+
+    private void replayFirstLight(DataInput in, Report report) throws IOException {
+        FirstLightHandler.SeedMode seedMode = FirstLightHandler.SeedMode.values()[in.readByte()];
+        int chunkCount = in.readInt();
+        List<ChunkPos> newChunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            newChunks.add(new ChunkPos(in.readInt(), in.readInt(), in.readInt()));
+        }
+        SnapshotWorld world = new SnapshotWorld();
+        List<ChunkPos> loaded = readWorld(in, world);
+        Vec3List expectedSky = LightTraceFormat.readPositions(in);
+        Vec3List expectedBlock = LightTraceFormat.readPositions(in);
+        List<byte[]> expected = readLight(in, loaded);
+
+        FirstLightHandler handler = new FirstLightHandler(world, seedMode);
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        long start = System.nanoTime();
+        handler.apply(newChunks, sky, block);
+        long nanos = System.nanoTime() - start;
+
+        int mismatched = compareLight(world, loaded, expected);
+        if (!Arrays.equals(sorted(sky), sorted(expectedSky)) || !Arrays.equals(sorted(block), sorted(expectedBlock))) {
+            report.mismatchedOutputs++;
+        }
+        report.addCall(nanos, mismatched);
+    }
+
+    private static List<ChunkPos> readWorld(DataInput in, SnapshotWorld world) throws IOException {
+        int heightMapCount = in.readInt();
+        for (int i = 0; i < heightMapCount; i++) {
+            ColumnPos pos = new ColumnPos(in.readInt(), in.readInt());
+            int[] topY = new int[16 * 16];
+            for (int j = 0; j < topY.length; j++) {
+                topY[j] = in.readInt();
+            }
+            world.addHeightMap(pos, topY);
+        }
+        int chunkCount = in.readInt();
+        List<ChunkPos> loaded = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            ChunkPos pos = new ChunkPos(in.readInt(), in.readInt(), in.readInt());
+            if (in.readBoolean()) {
+                byte[][] arrays = new byte[LightTraceFormat.ARRAY_COUNT][];
+                for (int j = 0; j < arrays.length; j++) {
+                    arrays[j] = LightTraceFormat.readNibbles(in);
+                }
+                world.addChunk(pos, arrays);
+                loaded.add(pos);
+            }
+        }
+        return loaded;
+    }
+
+    // sky and block light for each loaded chunk
+    private static List<byte[]> readLight(DataInput in, List<ChunkPos> loaded) throws IOException {
+        List<byte[]> light = new ArrayList<>(loaded.size() * 2);
+        for (int i = 0; i < loaded.size() * 2; i++) {
+            light.add(LightTraceFormat.readNibbles(in));
+        }
+        return light;
+    }
+
+    private static int compareLight(SnapshotWorld world, List<ChunkPos> loaded, List<byte[]> expected) {
+        int mismatched = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            SnapshotWorld.SnapshotChunk chunk = world.getChunk(loaded.get(i));
+            byte[] sky = LightTraceFormat.captureLight(chunk, LightType.SKY);
+            byte[] block = LightTraceFormat.captureLight(chunk, LightType.BLOCK);
+            byte[] expectedSky = expected.get(i * 2);
+            byte[] expectedBlock = expected.get(i * 2 + 1);
+            for (int j = 0; j < 4096; j++) {
+                if (LightTraceFormat.getNibble(sky, j) != LightTraceFormat.getNibble(expectedSky, j)
+                    || LightTraceFormat.getNibble(block, j) != LightTraceFormat.getNibble(expectedBlock, j)) {
+                    mismatched++;
+                }
+            }
+        }
+        return mismatched;
+    }
+
+    private static String[] sorted(Vec3List positions) {
+        String[] strings = new String[positions.size()];
+        for (int i = 0; positions.next(); i++) {
+            strings[i] = positions.getX() + "," + positions.getY() + "," + positions.getZ();
+        }
+        Arrays.sort(strings);
+        return strings;
+    }
+
+    /**
+     * Replays a trace file and prints the report. Arguments are the trace file, gzipped if the name ends with {@code .gz}, and optionally
+     * the propagator to use, {@code minecraft} (default) or {@code parallel}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: LightTraceReplay <trace file> [minecraft|parallel]");
+            System.exit(1);
+            return;
+        }
+        String propagator = args.length > 1 ? args[1] : "minecraft";
+        PropagatorFactory factory;
+        if (propagator.equals("minecraft")) {
+            factory = MinecraftChunkAwareLightPropagator::new;
+        } else if (propagator.equals("parallel")) {
+            factory = (world, writer) -> new ParallelLightPropagator(world, writer, ForkJoinPool.commonPool());
+        } else {
+            System.err.println("Unknown propagator " + propagator);
+            System.exit(1);
+            return;
+        }
+        try (InputStream file = new BufferedInputStream(new FileInputStream(args[0]))) {
+            InputStream in = args[0].endsWith(".gz") ? new GZIPInputStream(file) : file;
+            System.out.println(new LightTraceReplay(factory).replay(new DataInputStream(in)));
+        }
+    }
+
+    @FunctionalInterface
+    public interface PropagatorFactory {
+        LightPropagator create(WorldAccess world, LightDataWriter writer);
+    }
+
+    public static final class Report {
+
+        private int calls;
+        private int mismatchedCalls;
+        private long mismatchedBlocks;
+        private int mismatchedOutputs;
+        private long totalNanos;
+        private long maxNanos;
+        private boolean truncated;
+
+        private void addCall(long nanos, int mismatched) {
+            calls++;
+            if (mismatched != 0) {
+                mismatchedCalls++;
+                mismatchedBlocks += mismatched;
+            }
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+
+        /**
+         * Returns the number of calls that left at least one block with different light than when recording.
+         */
+        public int getMismatchedCalls() {
+            return mismatchedCalls;
+        }
+
+        public long getMismatchedBlocks() {
+            return mismatchedBlocks;
+        }
+
+        /**
+         * Returns the number of first light calls that output different positions to update than when recording.
+         */
+        public int getMismatchedOutputs() {
+            return mismatchedOutputs;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns true if the trace ended without {@link LightTraceFormat#END}, usually because recording was interrupted.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override public String toString() {
+            return "Report{" +
+                "calls=" + calls +
+                ", mismatchedCalls=" + mismatchedCalls +
+                ", mismatchedBlocks=" + mismatchedBlocks +
+                ", mismatchedOutputs=" + mismatchedOutputs +
+                ", totalNanos=" + totalNanos +
+                ", maxNanos=" + maxNanos +
+                ", truncated=" + truncated +
+                '}';
+        }
+    }
+}
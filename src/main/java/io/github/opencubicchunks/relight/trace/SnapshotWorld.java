@@ -0,0 +1,163 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.trace;
+
+import io.github.opencubicchunks.relight.heightmap.HeightMap;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.ColumnPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightDataReader;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
+import io.github.opencubicchunks.relight.world.NibbleLightChunk;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * World rebuilt from the snapshots of one trace record. Chunks that weren't accessed during the recorded call are treated as unloaded,
+ * writes to them are ignored.
+ */
+class SnapshotWorld implements WorldAccess, LightDataWriter, LightDataReader {
+
+    private final Map<ChunkPos, SnapshotChunk> chunks = new HashMap<>();
+    private final Map<ColumnPos, int[]> heightMaps = new HashMap<>();
+
+    void addHeightMap(ColumnPos pos, int[] topY) {
+        heightMaps.put(pos, topY);
+    }
+
+    void addChunk(ChunkPos pos, byte[][] arrays) {
+        chunks.put(pos, new SnapshotChunk(pos, arrays));
+    }
+
+    SnapshotChunk getChunk(ChunkPos pos) {
+        return chunks.get(pos);
+    }
+
+    @Override public LightDataReader getLightChunk(ChunkPos minPos, ChunkPos maxPos) {
+        return this;
+    }
+
+    @Override public LightDataWriter getWriterFor(ChunkPos minPos, ChunkPos maxPos) {
+        return this;
+    }
+
+    @Override public HeightMap getHeightMap(ColumnPos pos) {
+        int[] topY = heightMaps.get(pos);
+        if (topY == null) {
+            return (localX, localZ) -> Integer.MIN_VALUE;
+        }
+        return (localX, localZ) -> topY[localZ << 4 | localX];
+    }
+
+    @Override public boolean isChunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        return chunks.containsKey(new ChunkPos(chunkX, chunkY, chunkZ));
+    }
+
+    @Override public LightChunk getLightChunk(ChunkPos pos) {
+        return chunks.get(pos);
+    }
+
+    @Override public LightChunk getLightChunkIfLoaded(int chunkX, int chunkY, int chunkZ) {
+        return chunks.get(new ChunkPos(chunkX, chunkY, chunkZ));
+    }
+
+    @Override public List<LightChunk> chunksBetween(ColumnPos pos, int start, int end) {
+        List<LightChunk> list = new ArrayList<>();
+        for (int y = end; y >= start; y--) {
+            SnapshotChunk chunk = chunks.get(new ChunkPos(pos.getX(), y, pos.getZ()));
+            if (chunk != null) {
+                list.add(chunk);
+            }
+        }
+        return list;
+    }
+
+    @Override public int getLight(int x, int y, int z, LightType type) {
+        SnapshotChunk chunk = chunkAt(x, y, z);
+        return chunk == null ? type.defaultValue() : chunk.getLight(x, y, z, type);
+    }
+
+    @Override public int getLightSource(int x, int y, int z, LightType type) {
+        SnapshotChunk chunk = chunkAt(x, y, z);
+        return chunk == null ? 0 : chunk.getLightSource(x, y, z, type);
+    }
+
+    @Override public void setLight(int x, int y, int z, int value, LightType type) {
+        SnapshotChunk chunk = chunkAt(x, y, z);
+        if (chunk != null) {
+            chunk.setLight(x, y, z, value, type);
+        }
+    }
+
+    @Override public void fillChunk(int chunkX, int chunkY, int chunkZ, int value, LightType type) {
+        SnapshotChunk chunk = chunks.get(new ChunkPos(chunkX, chunkY, chunkZ));
+        if (chunk != null) {
+            chunk.fill(type, value);
+        }
+    }
+
+    private SnapshotChunk chunkAt(int x, int y, int z) {
+        return chunks.get(new ChunkPos(x >> 4, y >> 4, z >> 4));
+    }
+
+    static final class SnapshotChunk extends NibbleLightChunk {
+
+        private final byte[] opacity;
+        private final byte[] skySource;
+        private final byte[] blockSource;
+
+        SnapshotChunk(ChunkPos pos, byte[][] arrays) {
+            super(pos.getX(), pos.getY(), pos.getZ());
+            this.opacity = arrays[LightTraceFormat.OPACITY];
+            this.skySource = arrays[LightTraceFormat.SKY_SOURCE];
+            this.blockSource = arrays[LightTraceFormat.BLOCK_SOURCE];
+            setLightArray(LightType.SKY, arrays[LightTraceFormat.SKY_LIGHT]);
+            setLightArray(LightType.BLOCK, arrays[LightTraceFormat.BLOCK_LIGHT]);
+        }
+
+        @Override public int getLightSource(int x, int y, int z, LightType type) {
+            return LightTraceFormat.getNibble(type == LightType.SKY ? skySource : blockSource, index(x, y, z));
+        }
+
+        /**
+         * Only the opacity of each block is recorded, so this is the opacity of the target block.
+         */
+        @Override public int getOpacityBetween(int fromX, int fromY, int fromZ, int toX, int toY, int toZ) {
+            return getOpacity(toX, toY, toZ);
+        }
+
+        @Override public int getOpacity(int blockX, int blockY, int blockZ) {
+            return LightTraceFormat.getNibble(opacity, index(blockX, blockY, blockZ));
+        }
+
+        private static int index(int x, int y, int z) {
+            return (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of block positions, stored as a 4096 bit bitmap for each cube that has at least one position in it. Reusable after
+ * {@link #clear()}.
+ * <p>
+ * Iteration goes through cubes in the order they were first added to, and through positions inside a cube in the order of their index
+ * {@code y << 8 | z << 4 | x}, the same layout as light storage. Handlers can emit positions into it without producing duplicates, and
+ * propagators reading the result touch each cube in one sequential run.
+ */
+public class BlockPosSet {
+
+    private static final int NO_ENTRY = Vec3IndexMap.NO_ENTRY;
+    private static final int WORDS_PER_CUBE = 4096 / 64;
+
+    // slot of each cube, in the order cubes were first added
+    private final Vec3IndexMap cubes = new Vec3IndexMap();
+    // bitmap of each cube, by slot
+    private long[] bits = new long[16 * WORDS_PER_CUBE];
+    private int size = 0;
+
+    // the cube of the last add, positions usually come in runs in the same cube
+    private int lastSlot = NO_ENTRY;
+
+    /**
+     * Adds the position, returns false if it was already in the set.
+     */
+    public boolean add(int x, int y, int z) {
+        int base = cubeSlot(x >> 4, y >> 4, z >> 4, true) * WORDS_PER_CUBE;
+        int index = index(x, y, z);
+        long bit = 1L << index;
+        long word = bits[base + (index >> 6)];
+        if ((word & bit) != 0) {
+            return false;
+        }
+        bits[base + (index >> 6)] = word | bit;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds all 4096 positions of the given cube.
+     */
+    public void addCube(int cubeX, int cubeY, int cubeZ) {
+        int base = cubeSlot(cubeX, cubeY, cubeZ, true) * WORDS_PER_CUBE;
+        for (int i = base; i < base + WORDS_PER_CUBE; i++) {
+            size += 64 - Long.bitCount(bits[i]);
+            bits[i] = -1L;
+        }
+    }
+
+    /**
+     * Adds all positions of the other set. Cubes that are new to this set are added in the other set's order.
+     */
+    public void addAll(BlockPosSet other) {
+        for (int otherSlot = 0; otherSlot < other.cubes.size(); otherSlot++) {
+            int slot = cubeSlot(other.cubes.getX(otherSlot), other.cubes.getY(otherSlot), other.cubes.getZ(otherSlot), true);
+            int base = slot * WORDS_PER_CUBE;
+            int otherBase = otherSlot * WORDS_PER_CUBE;
+            for (int i = 0; i < WORDS_PER_CUBE; i++) {
+                long word = bits[base + i];
+                long merged = word | other.bits[otherBase + i];
+                size += Long.bitCount(merged) - Long.bitCount(word);
+                bits[base + i] = merged;
+            }
+        }
+    }
+
+    public boolean contains(int x, int y, int z) {
+        int slot = cubeSlot(x >> 4, y >> 4, z >> 4, false);
+        if (slot == NO_ENTRY) {
+            return false;
+        }
+        int index = index(x, y, z);
+        return (bits[slot * WORDS_PER_CUBE + (index >> 6)] & 1L << index) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the consumer for each position, in iteration order.
+     */
+    public void forEach(IntTriConsumer consumer) {
+        for (int slot = 0; slot < cubes.size(); slot++) {
+            int minX = cubes.getX(slot) << 4;
+            int minY = cubes.getY(slot) << 4;
+            int minZ = cubes.getZ(slot) << 4;
+            int base = slot * WORDS_PER_CUBE;
+            for (int i = 0; i < WORDS_PER_CUBE; i++) {
+                long word = bits[base + i];
+                while (word != 0) {
+                    int index = i << 6 | Long.numberOfTrailingZeros(word);
+                    consumer.accept(minX + (index & 0xF), minY + (index >> 8), minZ + (index >> 4 & 0xF));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds all positions to the list in iteration order and clears this set.
+     */
+    public void drainTo(Vec3List output) {
+        // same as forEach, without allocating a consumer
+        for (int slot = 0; slot < cubes.size(); slot++) {
+            int minX = cubes.getX(slot) << 4;
+            int minY = cubes.getY(slot) << 4;
+            int minZ = cubes.getZ(slot) << 4;
+            int base = slot * WORDS_PER_CUBE;
+            for (int i = 0; i < WORDS_PER_CUBE; i++) {
+                long word = bits[base + i];
+                while (word != 0) {
+                    int index = i << 6 | Long.numberOfTrailingZeros(word);
+                    output.add(minX + (index & 0xF), minY + (index >> 8), minZ + (index >> 4 & 0xF));
+                    word &= word - 1;
+                }
+            }
+        }
+        clear();
+    }
+
+    public void clear() {
+        if (cubes.size() == 0) {
+            return;
+        }
+        Arrays.fill(bits, 0, cubes.size() * WORDS_PER_CUBE, 0L);
+        cubes.clear();
+        size = 0;
+        lastSlot = NO_ENTRY;
+    }
+
+    private int cubeSlot(int cubeX, int cubeY, int cubeZ, boolean create) {
+        if (lastSlot != NO_ENTRY && cubes.getX(lastSlot) == cubeX && cubes.getY(lastSlot) == cubeY && cubes.getZ(lastSlot) == cubeZ) {
+            return lastSlot;
+        }
+        if (!create) {
+            int slot = cubes.indexOf(cubeX, cubeY, cubeZ);
+            if (slot != NO_ENTRY) {
+                lastSlot = slot;
+            }
+            return slot;
+        }
+        int slot = cubes.add(cubeX, cubeY, cubeZ);
+        if ((slot + 1) * WORDS_PER_CUBE > bits.length) {
+            bits = Arrays.copyOf(bits, bits.length * 2);
+        }
+        return lastSlot = slot;
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+
+import java.util.Arrays;
+
+/**
+ * Queue of block positions with both a sky and a block light value, for propagating both light types in one pass. Like
+ * {@link LightLevelQueue}, entries are returned from the highest level to the lowest, where the level of an entry is the higher of its
+ * two values. A value of 0 means the entry doesn't carry that light type.
+ * <p>
+ * Positions are stored packed by {@link PosUtil}, which leaves no spare bits, so the values are kept in a parallel byte array.
+ */
+public class DualLightLevelQueue {
+
+    private static final int LEVELS = LightPropagator.MAX_VALUE - LightPropagator.MIN_VALUE + 1;
+
+    private final long[][] buckets = new long[LEVELS][];
+    // sky value in the high nibble, block value in the low nibble
+    private final byte[][] values = new byte[LEVELS][];
+    private final int[] writePtr = new int[LEVELS];
+    private final int[] readPtr = new int[LEVELS];
+
+    // all buckets above this one are empty
+    private int maxBucket = -1;
+    private int current = -1;
+    private int currentIdx;
+
+    public DualLightLevelQueue(int initSize) {
+        if (initSize <= 0) {
+            throw new IllegalArgumentException("initSize must be positive but got " + initSize);
+        }
+        for (int i = 0; i < LEVELS; i++) {
+            this.buckets[i] = new long[initSize];
+            this.values[i] = new byte[initSize];
+        }
+    }
+
+    public void add(long packedPos, int skyLevel, int blockLevel) {
+        int bucket = Math.max(skyLevel, blockLevel) - LightPropagator.MIN_VALUE;
+        long[] positions = this.buckets[bucket];
+        int ptr = this.writePtr[bucket];
+        if (ptr >= positions.length) {
+            positions = this.buckets[bucket] = Arrays.copyOf(positions, positions.length * 2);
+            this.values[bucket] = Arrays.copyOf(this.values[bucket], positions.length);
+        }
+        positions[ptr] = packedPos;
+        this.values[bucket][ptr] = (byte) ((skyLevel - LightPropagator.MIN_VALUE) << 4 | (blockLevel - LightPropagator.MIN_VALUE));
+        this.writePtr[bucket] = ptr + 1;
+        if (bucket > this.maxBucket) {
+            this.maxBucket = bucket;
+        }
+    }
+
+    /**
+     * Moves to the next entry with the highest level. Returns false and resets the queue if there are no more entries.
+     */
+    public boolean next() {
+        while (this.maxBucket >= 0) {
+            int bucket = this.maxBucket;
+            int ptr = this.readPtr[bucket];
+            if (ptr < this.writePtr[bucket]) {
+                this.readPtr[bucket] = ptr + 1;
+                this.current = bucket;
+                this.currentIdx = ptr;
+                return true;
+            }
+            this.readPtr[bucket] = 0;
+            this.writePtr[bucket] = 0;
+            this.maxBucket--;
+        }
+        this.current = -1;
+        return false;
+    }
+
+    public void clear() {
+        Arrays.fill(this.readPtr, 0);
+        Arrays.fill(this.writePtr, 0);
+        this.maxBucket = -1;
+        this.current = -1;
+    }
+
+    public long getPos() {
+        return this.buckets[current][currentIdx];
+    }
+
+    public int getSkyLevel() {
+        return (this.values[current][currentIdx] >> 4 & 0xF) + LightPropagator.MIN_VALUE;
+    }
+
+    public int getBlockLevel() {
+        return (this.values[current][currentIdx] & 0xF) + LightPropagator.MIN_VALUE;
+    }
+
+    public int getLevel(LightType type) {
+        return type == LightType.SKY ? getSkyLevel() : getBlockLevel();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+
+import java.util.Arrays;
+
+/**
+ * Queue of block positions with light value, with one bucket for each light level. Entries are returned from the highest light level
+ * to the lowest, in insertion order within each level. Positions are stored packed by {@link PosUtil}, so the same Y coordinate range
+ * restrictions apply.
+ * <p>
+ * When the queue is drained, all buckets are reset and it can be reused without allocating.
+ */
+public class LightLevelQueue {
+
+    private static final int LEVELS = LightPropagator.MAX_VALUE - LightPropagator.MIN_VALUE + 1;
+
+    private final long[][] buckets = new long[LEVELS][];
+    private final int[] writePtr = new int[LEVELS];
+    private final int[] readPtr = new int[LEVELS];
+
+    // all buckets above this one are empty
+    private int maxBucket = -1;
+    private int current = -1;
+    private int currentIdx;
+
+    public LightLevelQueue(int initSize) {
+        if (initSize <= 0) {
+            throw new IllegalArgumentException("initSize must be positive but got " + initSize);
+        }
+        for (int i = 0; i < LEVELS; i++) {
+            this.buckets[i] = new long[initSize];
+        }
+    }
+
+    public void add(int x, int y, int z, int level) {
+        add(PosUtil.packPos(x, y, z), level);
+    }
+
+    public void add(long packedPos, int level) {
+        int bucket = level - LightPropagator.MIN_VALUE;
+        long[] positions = this.buckets[bucket];
+        int ptr = this.writePtr[bucket];
+        if (ptr >= positions.length) {
+            positions = this.buckets[bucket] = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[ptr] = packedPos;
+        this.writePtr[bucket] = ptr + 1;
+        if (bucket > this.maxBucket) {
+            this.maxBucket = bucket;
+        }
+    }
+
+    /**
+     * Moves to the next entry with the highest light level. Returns false and resets the queue if there are no more entries.
+     */
+    public boolean next() {
+        while (this.maxBucket >= 0) {
+            int bucket = this.maxBucket;
+            int ptr = this.readPtr[bucket];
+            if (ptr < this.writePtr[bucket]) {
+                this.readPtr[bucket] = ptr + 1;
+                this.current = bucket;
+                this.currentIdx = ptr;
+                return true;
+            }
+            this.readPtr[bucket] = 0;
+            this.writePtr[bucket] = 0;
+            this.maxBucket--;
+        }
+        this.current = -1;
+        return false;
+    }
+
+    public boolean isEmpty() {
+        for (int i = this.maxBucket; i >= 0; i--) {
+            if (this.readPtr[i] < this.writePtr[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(this.readPtr, 0);
+        Arrays.fill(this.writePtr, 0);
+        this.maxBucket = -1;
+        this.current = -1;
+    }
+
+    public long getPos() {
+        return this.buckets[current][currentIdx];
+    }
+
+    public int getX() {
+        return PosUtil.unpackX(getPos());
+    }
+
+    public int getY() {
+        return PosUtil.unpackY(getPos());
+    }
+
+    public int getZ() {
+        return PosUtil.unpackZ(getPos());
+    }
+
+    public int getLevel() {
+        return current + LightPropagator.MIN_VALUE;
+    }
+}
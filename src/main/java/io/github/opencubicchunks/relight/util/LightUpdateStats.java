@@ -0,0 +1,100 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+/**
+ * Amount of work done by a single call of a handler or propagator, see {@link LightStatsListener}. Counters that don't apply to the
+ * reporter are 0.
+ */
+public final class LightUpdateStats {
+
+    private final long seeded;
+    private final long dequeued;
+    private final long requeued;
+    private final long cubesTouched;
+    private final long worldLookups;
+    private final long nanos;
+
+    public LightUpdateStats(long seeded, long dequeued, long requeued, long cubesTouched, long worldLookups, long nanos) {
+        this.seeded = seeded;
+        this.dequeued = dequeued;
+        this.requeued = requeued;
+        this.cubesTouched = cubesTouched;
+        this.worldLookups = worldLookups;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Positions the call started from: seeds given to a propagator, or positions output by a handler.
+     */
+    public long getSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Queue entries processed by a propagator, in all phases.
+     */
+    public long getDequeued() {
+        return dequeued;
+    }
+
+    /**
+     * Queue entries a propagator skipped because the position was queued again with a different value before the entry was processed.
+     */
+    public long getRequeued() {
+        return requeued;
+    }
+
+    /**
+     * Distinct cubes accessed. Propagators count each pass separately.
+     */
+    public long getCubesTouched() {
+        return cubesTouched;
+    }
+
+    /**
+     * Calls made to {@link io.github.opencubicchunks.relight.world.WorldAccess}.
+     */
+    public long getWorldLookups() {
+        return worldLookups;
+    }
+
+    /**
+     * Wall time of the call.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override public String toString() {
+        return "LightUpdateStats{" +
+            "seeded=" + seeded +
+            ", dequeued=" + dequeued +
+            ", requeued=" + requeued +
+            ", cubesTouched=" + cubesTouched +
+            ", worldLookups=" + worldLookups +
+            ", nanos=" + nanos +
+            '}';
+    }
+}
@@ -23,6 +23,45 @@
  */
 package io.github.opencubicchunks.relight.util;
 
+/**
+ * Packs block positions into a single long, using the same layout as Minecraft's {@code BlockPos.asLong()}: 26 bits of X in the highest
+ * bits, then 26 bits of Z, then 12 bits of Y in the lowest bits. All 3 values are signed.
+ * <p>
+ * 26 bits are enough for X and Z up to the world border, but 12 bits of Y only cover 4096 blocks, which is not enough for cubic chunks.
+ * Users with unlimited world height should pack Y relative to a cube aligned origin and keep all positions within {@link #MIN_Y} and
+ * {@link #MAX_Y} of it.
+ */
 public class PosUtil {
 
+    public static final int X_BITS = 26;
+    public static final int Z_BITS = 26;
+    public static final int Y_BITS = 12;
+
+    private static final int Y_SHIFT = 0;
+    private static final int Z_SHIFT = Y_SHIFT + Y_BITS;
+    private static final int X_SHIFT = Z_SHIFT + Z_BITS;
+
+    private static final long X_MASK = (1L << X_BITS) - 1;
+    private static final long Z_MASK = (1L << Z_BITS) - 1;
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+
+    public static final int MIN_Y = -(1 << (Y_BITS - 1));
+    public static final int MAX_Y = (1 << (Y_BITS - 1)) - 1;
+
+    public static long packPos(int x, int y, int z) {
+        assert y >= MIN_Y && y <= MAX_Y : "Y coordinate " + y + " out of packed range";
+        return (x & X_MASK) << X_SHIFT | (z & Z_MASK) << Z_SHIFT | (y & Y_MASK) << Y_SHIFT;
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> X_SHIFT);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << (64 - Y_SHIFT - Y_BITS) >> (64 - Y_BITS));
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << (64 - Z_SHIFT - Z_BITS) >> (64 - Z_BITS));
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import java.util.Arrays;
+
+/**
+ * Assigns indexes to distinct integer positions in the order they are first added, starting at 0. Callers keep their own data for each
+ * position in arrays by index. Reusable after {@link #clear()}.
+ */
+public class Vec3IndexMap {
+
+    public static final int NO_ENTRY = -1;
+
+    // x, y, z of each entry
+    private int[] coords = new int[16 * 3];
+    private int size = 0;
+    // entry indexes by position hash, open addressing with linear probing
+    private int[] table = new int[32];
+
+    public Vec3IndexMap() {
+        Arrays.fill(table, NO_ENTRY);
+    }
+
+    /**
+     * Adds the position if it's not in the map yet, and returns it's index. A new position gets index {@code size() - 1}.
+     */
+    public int add(int x, int y, int z) {
+        int mask = table.length - 1;
+        int slot = hash(x, y, z) & mask;
+        while (table[slot] != NO_ENTRY) {
+            int idx = table[slot];
+            if (isAt(idx, x, y, z)) {
+                return idx;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int idx = size++;
+        table[slot] = idx;
+        if (idx * 3 >= coords.length) {
+            coords = Arrays.copyOf(coords, coords.length * 2);
+        }
+        coords[idx * 3] = x;
+        coords[idx * 3 + 1] = y;
+        coords[idx * 3 + 2] = z;
+        // keep the load factor at most 1/2
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return idx;
+    }
+
+    /**
+     * Returns the index of the position, or {@link #NO_ENTRY} if it's not in the map.
+     */
+    public int indexOf(int x, int y, int z) {
+        int mask = table.length - 1;
+        for (int slot = hash(x, y, z) & mask; table[slot] != NO_ENTRY; slot = (slot + 1) & mask) {
+            int idx = table[slot];
+            if (isAt(idx, x, y, z)) {
+                return idx;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getX(int idx) {
+        return coords[idx * 3];
+    }
+
+    public int getY(int idx) {
+        return coords[idx * 3 + 1];
+    }
+
+    public int getZ(int idx) {
+        return coords[idx * 3 + 2];
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(table, NO_ENTRY);
+        size = 0;
+    }
+
+    private boolean isAt(int idx, int x, int y, int z) {
+        return coords[idx * 3] == x && coords[idx * 3 + 1] == y && coords[idx * 3 + 2] == z;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        Arrays.fill(table, NO_ENTRY);
+        int mask = tableSize - 1;
+        for (int idx = 0; idx < size; idx++) {
+            int slot = hash(getX(idx), getY(idx), getZ(idx)) & mask;
+            while (table[slot] != NO_ENTRY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = idx;
+        }
+    }
+
+    private static int hash(int x, int y, int z) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77 + z * 0xC2B2AE3D;
+        return h ^ (h >>> 16);
+    }
+}
@@ -25,18 +25,36 @@ package io.github.opencubicchunks.relight.util;
 
 import java.util.Arrays;
 
+/**
+ * Growable list of block positions, read in order with {@link #next()}.
+ * <p>
+ * Lists can be kept and reused with {@link #clear()}. So that a single unusually large use doesn't keep memory forever, every
+ * {@link #TRIM_INTERVAL} clears the capacity is reduced to twice the largest size reached since the last check, but never below the
+ * initial size.
+ */
 public class Vec3List {
 
+    /**
+     * Number of {@link #clear()} calls between capacity checks.
+     */
+    public static final int TRIM_INTERVAL = 64;
+
+    private final int minCapacity;
     private int[] coords;
 
     private int ptr = 0;
     private int readPtr = -3;
 
+    // largest ptr since the last capacity check
+    private int highWaterMark;
+    private int clearsSinceTrim;
+
     public Vec3List(int initSize) {
         if (initSize <= 0) {
             throw new IllegalArgumentException("initSize must be positive but got " + initSize);
         }
-        this.coords = new int[initSize * 3];
+        this.minCapacity = initSize * 3;
+        this.coords = new int[minCapacity];
     }
 
     public void add(int x, int y, int z) {
@@ -50,6 +68,55 @@ public class Vec3List {
         this.coords[ptr++] = z;
     }
 
+    /**
+     * Adds all positions of the other list, regardless of how far it has been read. The other list is not changed.
+     */
+    public void addAll(Vec3List other) {
+        if (this.ptr + other.ptr > this.coords.length) {
+            this.coords = Arrays.copyOf(this.coords, Math.max(this.coords.length * 2, this.ptr + other.ptr));
+        }
+        System.arraycopy(other.coords, 0, this.coords, this.ptr, other.ptr);
+        this.ptr += other.ptr;
+    }
+
+    /**
+     * Removes all positions and moves reading back to the start, trimming the capacity if it's time for a check.
+     */
+    public void clear() {
+        this.highWaterMark = Math.max(this.highWaterMark, this.ptr);
+        this.ptr = 0;
+        this.readPtr = -3;
+        if (++this.clearsSinceTrim >= TRIM_INTERVAL) {
+            int capacity = Math.max(this.minCapacity, this.highWaterMark * 2);
+            if (this.coords.length > capacity) {
+                this.coords = new int[capacity];
+            }
+            this.highWaterMark = 0;
+            this.clearsSinceTrim = 0;
+        }
+    }
+
+    /**
+     * Moves reading back to the start, so that the next call to {@link #next()} returns the first position again.
+     */
+    public void rewind() {
+        this.readPtr = -3;
+    }
+
+    /**
+     * Calls the consumer for each position in order, regardless of how far the list has been read. Doesn't change the read position.
+     */
+    public void forEach(IntTriConsumer consumer) {
+        int[] coords = this.coords;
+        for (int i = 0, end = this.ptr; i < end; i += 3) {
+            consumer.accept(coords[i], coords[i + 1], coords[i + 2]);
+        }
+    }
+
+    public int size() {
+        return this.ptr / 3;
+    }
+
     public boolean next() {
         readPtr += 3;
         return readPtr < ptr;
@@ -67,4 +134,23 @@ public class Vec3List {
         return this.coords[readPtr + 2];
     }
 
+    /**
+     * Returns X of the position at the given index, regardless of how far the list has been read.
+     */
+    public int getX(int index) {
+        return this.coords[index * 3];
+    }
+
+    public int getY(int index) {
+        return this.coords[index * 3 + 1];
+    }
+
+    public int getZ(int index) {
+        return this.coords[index * 3 + 2];
+    }
+
+    int capacity() {
+        return this.coords.length / 3;
+    }
+
 }
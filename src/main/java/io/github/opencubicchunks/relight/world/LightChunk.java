@@ -27,6 +27,11 @@ import io.github.opencubicchunks.relight.util.LightType;
 
 public interface LightChunk {
 
+    /**
+     * Length of the array passed to {@link #getOpacityMask(long[])}, one bit for each block.
+     */
+    int OPACITY_MASK_LENGTH = 16 * 16 * 16 / 64;
+
     int getLight(int x, int y, int z, LightType type);
 
     int getLightSource(int x, int y, int z, LightType type);
@@ -42,6 +47,40 @@ public interface LightChunk {
      */
     int getOpacity(int blockX, int blockY, int blockZ);
 
+    /**
+     * Fills the array of {@link #OPACITY_MASK_LENGTH} longs with a bit for each block with nonzero {@link #getOpacity(int, int, int)},
+     * bit {@code i & 63} of {@code mask[i >> 6]} for local coordinates at index {@code i = y << 8 | z << 4 | x}.
+     * <p>
+     * Returns false if this chunk can't provide the mask faster than calling {@link #getOpacity(int, int, int)} for each block, the array
+     * may be left unchanged in that case.
+     */
+    default boolean getOpacityMask(long[] mask) {
+        return false;
+    }
+
+    /**
+     * Returns the opacity of all blocks in this chunk, or -1 if it's not the same everywhere or can't be known cheaply. When not -1,
+     * {@link #getOpacityBetween(int, int, int, int, int, int)} into any block of this chunk also returns this value.
+     */
+    default int getUniformOpacity() {
+        return -1;
+    }
+
+    /**
+     * Returns the light source value of all blocks in this chunk, or -1 if it's not the same everywhere or can't be known cheaply.
+     */
+    default int getUniformLightSource(LightType type) {
+        return -1;
+    }
+
+    /**
+     * Returns true if all light values of the given type in this chunk are equal to the given value. May return false if it can't be known
+     * cheaply.
+     */
+    default boolean isLightUniform(LightType type, int value) {
+        return false;
+    }
+
     int getX();
 
     int getY();
@@ -28,4 +28,18 @@ import io.github.opencubicchunks.relight.util.LightType;
 public interface LightDataWriter {
 
     void setLight(int x, int y, int z, int value, LightType type);
+
+    /**
+     * Sets light of all blocks in the given chunk to the same value. Storage that can represent uniform chunks without per-block data
+     * should override this, the default implementation sets each block separately.
+     */
+    default void fillChunk(int chunkX, int chunkY, int chunkZ, int value, LightType type) {
+        for (int x = chunkX << 4; x < (chunkX + 1) << 4; x++) {
+            for (int y = chunkY << 4; y < (chunkY + 1) << 4; y++) {
+                for (int z = chunkZ << 4; z < (chunkZ + 1) << 4; z++) {
+                    setLight(x, y, z, value, type);
+                }
+            }
+        }
+    }
 }
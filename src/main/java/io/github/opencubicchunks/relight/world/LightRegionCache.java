@@ -0,0 +1,175 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.world;
+
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+
+import java.util.Arrays;
+
+/**
+ * Caches {@link LightChunk} references for a box of chunks in a flat array, so that finding the chunk of a block costs a shift and an
+ * array index instead of a {@link WorldAccess} lookup. Chunks are resolved lazily, on first access, so a large region costs nothing for
+ * chunks that are never accessed.
+ * <p>
+ * Chunks outside of the region are not cached, they are looked up in {@link WorldAccess} on every access. Light values written through
+ * this cache go to the writer returned by {@link WorldAccess#getWriterFor(ChunkPos, ChunkPos)} for the region.
+ * <p>
+ * The cache must be cleared or moved to a different region when chunks are loaded or unloaded. Writing light requires a region to be
+ * set, there is no writer for an empty region.
+ */
+public class LightRegionCache implements LightDataReader, LightDataWriter {
+
+    private final WorldAccess world;
+
+    private int minChunkX, minChunkY, minChunkZ;
+    private int sizeX, sizeY, sizeZ;
+    private int volume;
+
+    private LightChunk[] chunks = new LightChunk[0];
+    private boolean[] resolved = new boolean[0];
+
+    private LightDataWriter writer;
+
+    private int resolvedCount;
+    private long lookupCount;
+
+    public LightRegionCache(WorldAccess world) {
+        this.world = world;
+    }
+
+    /**
+     * Sets the cached region to all chunks from min to max, inclusive.
+     */
+    public void setRegion(int minChunkX, int minChunkY, int minChunkZ, int maxChunkX, int maxChunkY, int maxChunkZ) {
+        if (minChunkX > maxChunkX || minChunkY > maxChunkY || minChunkZ > maxChunkZ) {
+            throw new IllegalArgumentException("Empty region from " + minChunkX + ", " + minChunkY + ", " + minChunkZ
+                + " to " + maxChunkX + ", " + maxChunkY + ", " + maxChunkZ);
+        }
+        clear();
+        this.minChunkX = minChunkX;
+        this.minChunkY = minChunkY;
+        this.minChunkZ = minChunkZ;
+        this.sizeX = maxChunkX - minChunkX + 1;
+        this.sizeY = maxChunkY - minChunkY + 1;
+        this.sizeZ = maxChunkZ - minChunkZ + 1;
+        this.volume = sizeX * sizeY * sizeZ;
+        if (this.chunks.length < volume) {
+            this.chunks = new LightChunk[volume];
+            this.resolved = new boolean[volume];
+        }
+    }
+
+    public void setRegion(ChunkPos minPos, ChunkPos maxPos) {
+        setRegion(minPos.getX(), minPos.getY(), minPos.getZ(), maxPos.getX(), maxPos.getY(), maxPos.getZ());
+    }
+
+    /**
+     * Sets the cached region to a cube of chunks with the given radius around a center chunk, {@code 2 * radius + 1} chunks wide.
+     */
+    public void setRegion(ChunkPos center, int radius) {
+        setRegion(center.getX() - radius, center.getY() - radius, center.getZ() - radius,
+            center.getX() + radius, center.getY() + radius, center.getZ() + radius);
+    }
+
+    /**
+     * Removes all cached chunks and makes the region empty.
+     */
+    public void clear() {
+        Arrays.fill(chunks, 0, volume, null);
+        Arrays.fill(resolved, 0, volume, false);
+        volume = sizeX = sizeY = sizeZ = resolvedCount = 0;
+        writer = null;
+    }
+
+    public boolean isInRegion(int chunkX, int chunkY, int chunkZ) {
+        return chunkX - minChunkX >= 0 && chunkX - minChunkX < sizeX
+            && chunkY - minChunkY >= 0 && chunkY - minChunkY < sizeY
+            && chunkZ - minChunkZ >= 0 && chunkZ - minChunkZ < sizeZ;
+    }
+
+    /**
+     * Returns the chunk at the given chunk coordinates, or null if it's not loaded.
+     */
+    public LightChunk getChunk(int chunkX, int chunkY, int chunkZ) {
+        if (!isInRegion(chunkX, chunkY, chunkZ)) {
+            return fetch(chunkX, chunkY, chunkZ);
+        }
+        int idx = ((chunkX - minChunkX) * sizeY + (chunkY - minChunkY)) * sizeZ + (chunkZ - minChunkZ);
+        if (!resolved[idx]) {
+            chunks[idx] = fetch(chunkX, chunkY, chunkZ);
+            resolved[idx] = true;
+            resolvedCount++;
+        }
+        return chunks[idx];
+    }
+
+    /**
+     * Returns the chunk containing the given block, or null if it's not loaded.
+     */
+    public LightChunk getChunkForBlock(int blockX, int blockY, int blockZ) {
+        return getChunk(blockX >> 4, blockY >> 4, blockZ >> 4);
+    }
+
+    /**
+     * Returns the number of chunks in the region that were accessed since it was set.
+     */
+    public int getResolvedCount() {
+        return resolvedCount;
+    }
+
+    /**
+     * Returns the total number of calls made to {@link WorldAccess} by this cache.
+     */
+    public long getLookupCount() {
+        return lookupCount;
+    }
+
+    private LightChunk fetch(int chunkX, int chunkY, int chunkZ) {
+        lookupCount++;
+        return world.getLightChunkIfLoaded(chunkX, chunkY, chunkZ);
+    }
+
+    @Override public int getLight(int x, int y, int z, LightType type) {
+        LightChunk chunk = getChunkForBlock(x, y, z);
+        return chunk == null ? type.defaultValue() : chunk.getLight(x, y, z, type);
+    }
+
+    @Override public int getLightSource(int x, int y, int z, LightType type) {
+        LightChunk chunk = getChunkForBlock(x, y, z);
+        return chunk == null ? type.defaultValue() : chunk.getLightSource(x, y, z, type);
+    }
+
+    @Override public void setLight(int x, int y, int z, int value, LightType type) {
+        if (writer == null) {
+            if (volume == 0) {
+                throw new IllegalStateException("No region set, can't write light at " + x + ", " + y + ", " + z);
+            }
+            lookupCount++;
+            writer = world.getWriterFor(new ChunkPos(minChunkX, minChunkY, minChunkZ),
+                new ChunkPos(minChunkX + sizeX - 1, minChunkY + sizeY - 1, minChunkZ + sizeZ - 1));
+        }
+        writer.setLight(x, y, z, value, type);
+    }
+}
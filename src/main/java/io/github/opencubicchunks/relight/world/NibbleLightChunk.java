@@ -0,0 +1,200 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.world;
+
+import io.github.opencubicchunks.relight.util.LightType;
+
+import java.util.Arrays;
+
+/**
+ * Reference light storage for a cube, keeping light of each type in a 2048 byte nibble array in the same layout as Minecraft's
+ * NibbleArray: index {@code y << 8 | z << 4 | x}, with even indexes in the low nibble.
+ * <p>
+ * Arrays are allocated lazily, a cube that was never written to has {@link LightType#defaultValue()} everywhere. Cubes that are all dark
+ * or all lit share immutable arrays, which are copied on the first write that changes them. Call {@link #compact()} after large updates
+ * to go back to the shared arrays where possible. Cubes fully above the surface can be filled with sky light through
+ * {@link #fillChunk(int, int, int, int, LightType)} without allocating anything.
+ * <p>
+ * Light sources, opacity and anything else about the blocks is left to subclasses.
+ */
+public abstract class NibbleLightChunk implements LightChunk, LightDataWriter {
+
+    public static final int ARRAY_SIZE = 2048;
+
+    private static final byte[] ALL_0 = new byte[ARRAY_SIZE];
+    private static final byte[] ALL_15 = new byte[ARRAY_SIZE];
+
+    static {
+        Arrays.fill(ALL_15, (byte) 0xFF);
+    }
+
+    private static final LightType[] TYPES = LightType.values();
+
+    private final int chunkX, chunkY, chunkZ;
+    // null when not allocated, indexed by LightType.ordinal()
+    private final byte[][] light = new byte[TYPES.length][];
+
+    protected NibbleLightChunk(int chunkX, int chunkY, int chunkZ) {
+        this.chunkX = chunkX;
+        this.chunkY = chunkY;
+        this.chunkZ = chunkZ;
+    }
+
+    @Override public int getLight(int x, int y, int z, LightType type) {
+        byte[] data = light[type.ordinal()];
+        if (data == null) {
+            return type.defaultValue();
+        }
+        int idx = index(x, y, z);
+        return (data[idx >> 1] >> ((idx & 1) << 2)) & 0xF;
+    }
+
+    @Override public void setLight(int x, int y, int z, int value, LightType type) {
+        if (getLight(x, y, z, type) == value) {
+            return;
+        }
+        byte[] data = writableArray(type);
+        int idx = index(x, y, z);
+        int shift = (idx & 1) << 2;
+        data[idx >> 1] = (byte) ((data[idx >> 1] & ~(0xF << shift)) | (value & 0xF) << shift);
+    }
+
+    /**
+     * Sets all light values of the given type to the same value, sharing the array with other cubes if it's 0 or 15.
+     */
+    public void fill(LightType type, int value) {
+        if (value == 0) {
+            light[type.ordinal()] = ALL_0;
+        } else if (value == 15) {
+            light[type.ordinal()] = ALL_15;
+        } else {
+            byte[] data = new byte[ARRAY_SIZE];
+            Arrays.fill(data, (byte) (value | value << 4));
+            light[type.ordinal()] = data;
+        }
+    }
+
+    /**
+     * Same as {@link #fill(LightType, int)}, the chunk coordinates are assumed to be the ones of this chunk.
+     */
+    @Override public void fillChunk(int chunkX, int chunkY, int chunkZ, int value, LightType type) {
+        fill(type, value);
+    }
+
+    @Override public boolean isLightUniform(LightType type, int value) {
+        byte[] data = light[type.ordinal()];
+        if (data == null) {
+            return value == type.defaultValue();
+        }
+        byte packed = (byte) (value | value << 4);
+        if (data == ALL_0 || data == ALL_15) {
+            return data[0] == packed;
+        }
+        for (int i = 0; i < ARRAY_SIZE; i++) {
+            if (data[i] != packed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the nibble array for the given light type, or null if it's not allocated.
+     * The returned array may be shared with other cubes and must not be modified.
+     */
+    public byte[] getLightArray(LightType type) {
+        return light[type.ordinal()];
+    }
+
+    /**
+     * Replaces the nibble array for the given light type, for example with data loaded from disk. The cube takes ownership of the array
+     * unless it's uniformly 0 or 15, in which case the shared array is used instead. Null makes the array unallocated again.
+     */
+    public void setLightArray(LightType type, byte[] data) {
+        if (data != null && data.length != ARRAY_SIZE) {
+            throw new IllegalArgumentException("Expected nibble array of size " + ARRAY_SIZE + " but got " + data.length);
+        }
+        light[type.ordinal()] = data == null ? null : shared(data);
+    }
+
+    /**
+     * Replaces arrays that are uniformly 0 or 15 with shared ones, releasing the memory used by this cube.
+     */
+    public void compact() {
+        for (int i = 0; i < light.length; i++) {
+            if (light[i] != null) {
+                light[i] = shared(light[i]);
+            }
+        }
+    }
+
+    private byte[] writableArray(LightType type) {
+        byte[] data = light[type.ordinal()];
+        if (data == null) {
+            int value = type.defaultValue();
+            data = new byte[ARRAY_SIZE];
+            if (value != 0) {
+                Arrays.fill(data, (byte) (value | value << 4));
+            }
+        } else if (data == ALL_0 || data == ALL_15) {
+            data = data.clone();
+        } else {
+            return data;
+        }
+        light[type.ordinal()] = data;
+        return data;
+    }
+
+    private static byte[] shared(byte[] data) {
+        if (data == ALL_0 || data == ALL_15) {
+            return data;
+        }
+        byte first = data[0];
+        if (first != 0 && first != (byte) 0xFF) {
+            return data;
+        }
+        for (int i = 1; i < ARRAY_SIZE; i++) {
+            if (data[i] != first) {
+                return data;
+            }
+        }
+        return first == 0 ? ALL_0 : ALL_15;
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF);
+    }
+
+    @Override public int getX() {
+        return chunkX;
+    }
+
+    @Override public int getY() {
+        return chunkY;
+    }
+
+    @Override public int getZ() {
+        return chunkZ;
+    }
+}
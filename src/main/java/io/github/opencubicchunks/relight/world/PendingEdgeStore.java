@@ -0,0 +1,223 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.world;
+
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.Vec3List;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers blocks on the faces of unloaded chunks where light changes were cut off, so that only these have to be updated when the
+ * chunk loads, instead of all of it's faces.
+ * <p>
+ * Each chunk with pending edges takes a bitmap of 6 * 256 bits, one for each block of each face. A block on an edge or corner of the chunk
+ * has a separate bit for each face it's reached through. The data can be saved per chunk ({@link #getEdges(ChunkPos)} and
+ * {@link #setEdges(ChunkPos, long[])}) or as a whole ({@link #write(DataOutput)} and {@link #read(DataInput)}), and dropped from memory
+ * while it's not needed.
+ * <p>
+ * All methods are synchronized, edges can be added from multiple threads.
+ */
+public class PendingEdgeStore {
+
+    private static final int FACE_SIZE = 16 * 16;
+    public static final int EDGE_DATA_LENGTH = 6 * FACE_SIZE / 64;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<ChunkPos, long[]> edges = new HashMap<>();
+
+    /**
+     * Adds a block in an unloaded chunk that light tried to reach from a neighbor block in a different chunk.
+     */
+    public synchronized void addEdge(int toX, int toY, int toZ, int fromX, int fromY, int fromZ) {
+        int face = faceToward(toX >> 4, toY >> 4, toZ >> 4, fromX >> 4, fromY >> 4, fromZ >> 4);
+        int localX = toX & 0xF, localY = toY & 0xF, localZ = toZ & 0xF;
+        int bit = face * FACE_SIZE;
+        switch (face >> 1) {
+            case 0:
+                bit += localY << 4 | localZ;
+                break;
+            case 1:
+                bit += localX << 4 | localZ;
+                break;
+            default:
+                bit += localX << 4 | localY;
+                break;
+        }
+        long[] data = edgesFor(new ChunkPos(toX >> 4, toY >> 4, toZ >> 4));
+        data[bit >> 6] |= 1L << bit;
+    }
+
+    /**
+     * Adds all blocks on the face of an unloaded chunk that touches the given neighbor chunk, for example because the neighbor was lit
+     * for the first time.
+     */
+    public synchronized void addFace(ChunkPos unloaded, ChunkPos neighbor) {
+        int face = faceToward(unloaded.getX(), unloaded.getY(), unloaded.getZ(), neighbor.getX(), neighbor.getY(), neighbor.getZ());
+        long[] data = edgesFor(unloaded);
+        int start = face * FACE_SIZE >> 6;
+        for (int i = start; i < start + (FACE_SIZE >> 6); i++) {
+            data[i] = -1L;
+        }
+    }
+
+    private long[] edgesFor(ChunkPos pos) {
+        return edges.computeIfAbsent(pos, p -> new long[EDGE_DATA_LENGTH]);
+    }
+
+    /**
+     * Returns index of the face of the first chunk touching the second one: -X, +X, -Y, +Y, -Z, +Z.
+     */
+    private static int faceToward(int chunkX, int chunkY, int chunkZ, int neighborX, int neighborY, int neighborZ) {
+        int dx = neighborX - chunkX, dy = neighborY - chunkY, dz = neighborZ - chunkZ;
+        if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) != 1) {
+            throw new IllegalArgumentException("Chunks " + chunkX + ", " + chunkY + ", " + chunkZ
+                + " and " + neighborX + ", " + neighborY + ", " + neighborZ + " are not next to each other");
+        }
+        if (dx != 0) {
+            return dx < 0 ? 0 : 1;
+        }
+        if (dy != 0) {
+            return dy < 0 ? 2 : 3;
+        }
+        return dz < 0 ? 4 : 5;
+    }
+
+    public synchronized boolean hasEdges(ChunkPos pos) {
+        return edges.containsKey(pos);
+    }
+
+    /**
+     * Returns the number of chunks with pending edges.
+     */
+    public synchronized int size() {
+        return edges.size();
+    }
+
+    /**
+     * Adds all pending edge blocks of the chunk to the output list and removes them from the store.
+     */
+    public synchronized void drainTo(ChunkPos pos, Vec3List output) {
+        long[] data = edges.remove(pos);
+        if (data == null) {
+            return;
+        }
+        for (int i = 0; i < data.length; i++) {
+            long bits = data[i];
+            while (bits != 0) {
+                int bit = i << 6 | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int face = bit / FACE_SIZE;
+                int a = (bit >> 4) & 0xF;
+                int b = bit & 0xF;
+                int side = (face & 1) == 0 ? 0 : 15;
+                switch (face >> 1) {
+                    case 0:
+                        output.add(pos.blockX(side), pos.blockY(a), pos.blockZ(b));
+                        break;
+                    case 1:
+                        output.add(pos.blockX(a), pos.blockY(side), pos.blockZ(b));
+                        break;
+                    default:
+                        output.add(pos.blockX(a), pos.blockY(b), pos.blockZ(side));
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes pending edges of the chunk, for example when it's generated and lit from scratch.
+     */
+    public synchronized void remove(ChunkPos pos) {
+        edges.remove(pos);
+    }
+
+    public synchronized void clear() {
+        edges.clear();
+    }
+
+    /**
+     * Returns a copy of the pending edge bitmap of the chunk, or null if it has none.
+     */
+    public synchronized long[] getEdges(ChunkPos pos) {
+        long[] data = edges.get(pos);
+        return data == null ? null : data.clone();
+    }
+
+    /**
+     * Merges a bitmap previously returned by {@link #getEdges(ChunkPos)} into the pending edges of the chunk.
+     */
+    public synchronized void setEdges(ChunkPos pos, long[] data) {
+        if (data.length != EDGE_DATA_LENGTH) {
+            throw new IllegalArgumentException("Expected edge data of length " + EDGE_DATA_LENGTH + " but got " + data.length);
+        }
+        long[] existing = edgesFor(pos);
+        for (int i = 0; i < data.length; i++) {
+            existing[i] |= data[i];
+        }
+    }
+
+    /**
+     * Writes all pending edges. The format is a version number, the number of chunks, and chunk coordinates followed by the bitmap for
+     * each chunk.
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(edges.size());
+        for (Map.Entry<ChunkPos, long[]> entry : edges.entrySet()) {
+            ChunkPos pos = entry.getKey();
+            out.writeInt(pos.getX());
+            out.writeInt(pos.getY());
+            out.writeInt(pos.getZ());
+            for (long bits : entry.getValue()) {
+                out.writeLong(bits);
+            }
+        }
+    }
+
+    /**
+     * Reads pending edges written by {@link #write(DataOutput)} and merges them into this store.
+     */
+    public synchronized void read(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported pending edge format version " + version);
+        }
+        int count = in.readInt();
+        long[] data = new long[EDGE_DATA_LENGTH];
+        for (int i = 0; i < count; i++) {
+            ChunkPos pos = new ChunkPos(in.readInt(), in.readInt(), in.readInt());
+            for (int j = 0; j < data.length; j++) {
+                data[j] = in.readLong();
+            }
+            setEdges(pos, data);
+        }
+    }
+}
@@ -42,6 +42,14 @@ public interface WorldAccess {
     // height map
     HeightMap getHeightMap(ColumnPos pos);
 
+    /**
+     * Same as {@link #getHeightMap(ColumnPos)}. Handlers use this one for every column they process, implementations that can find the
+     * heightmap without a {@link ColumnPos} should override it, the default allocates one.
+     */
+    default HeightMap getHeightMap(int columnX, int columnZ) {
+        return getHeightMap(new ColumnPos(columnX, columnZ));
+    }
+
     // chunk access
     boolean isChunkLoaded(int chunkX, int chunkY, int chunkZ);
 
@@ -51,8 +59,24 @@ public interface WorldAccess {
 
     LightChunk getLightChunk(ChunkPos pos);
 
+    /**
+     * Returns the chunk at the given position, or null if it's not loaded. Implementations that can find the chunk with a single lookup
+     * should override it, the default checks {@link #isChunkLoaded(int, int, int)} first and allocates a {@link ChunkPos}.
+     */
+    default LightChunk getLightChunkIfLoaded(int chunkX, int chunkY, int chunkZ) {
+        return isChunkLoaded(chunkX, chunkY, chunkZ) ? getLightChunk(new ChunkPos(chunkX, chunkY, chunkZ)) : null;
+    }
+
     /**
      * Returns an ordered list of all chunks in the given chunk height range from a given column
      */
     List<LightChunk> chunksBetween(ColumnPos pos, int start, int end);
+
+    /**
+     * Same as {@link #chunksBetween(ColumnPos, int, int)}. Implementations that can find the chunks without a {@link ColumnPos} should
+     * override it, the default allocates one.
+     */
+    default List<LightChunk> chunksBetween(int columnX, int columnZ, int start, int end) {
+        return chunksBetween(new ColumnPos(columnX, columnZ), start, end);
+    }
 }
@@ -23,6 +23,243 @@
  */
 package io.github.opencubicchunks.relight.handler;
 
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.litWorld;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
 public class TestBlockUpdateLightHandler {
 
+    @Test
+    public void testRandomChanges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+
+        for (int i = 0; i < 30; i++) {
+            Vec3List changed = new Vec3List(16);
+            for (int j = 0; j < 1 + rand.nextInt(5); j++) {
+                int x = rand.nextInt(world.sizeX());
+                int y = rand.nextInt(world.sizeY());
+                int z = rand.nextInt(world.sizeZ());
+                if (rand.nextBoolean()) {
+                    world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+                } else {
+                    world.setBlockSource(x, y, z, rand.nextInt(16));
+                }
+                changed.add(x, y, z);
+            }
+            updateLight(world, propagator, handler, changed);
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testSurfaceChanges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+
+        for (int i = 0; i < 30; i++) {
+            int x = rand.nextInt(world.sizeX());
+            int z = rand.nextInt(world.sizeZ());
+            int top = world.getTopY(x, z);
+            Vec3List changed = new Vec3List(16);
+            if (rand.nextBoolean() && top >= 0) {
+                // dig into the surface
+                world.setOpaque(x, top, z, false);
+                changed.add(x, top, z);
+            } else {
+                // place a block in the air, possibly far above the surface
+                int y = Math.min(world.sizeY() - 1, top + 1 + rand.nextInt(20));
+                world.setOpaque(x, y, z, true);
+                changed.add(x, y, z);
+            }
+            updateLight(world, propagator, handler, changed);
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testSurfaceChangesKnownTop() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+
+        for (int i = 0; i < 30; i++) {
+            int x = rand.nextInt(world.sizeX());
+            int z = rand.nextInt(world.sizeZ());
+            int top = world.getTopY(x, z);
+            int y = rand.nextBoolean() && top >= 0 ? top : Math.min(world.sizeY() - 1, top + 1 + rand.nextInt(20));
+            world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+
+            Vec3List sky = new Vec3List(16);
+            Vec3List block = new Vec3List(16);
+            handler.apply(x, y, z, top, sky, block);
+            propagator.update(sky, EnumSet.of(LightType.SKY));
+            propagator.update(block, EnumSet.of(LightType.BLOCK));
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testSeedsBounded() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+
+        // underground and in the air far from the surface, nothing but the block and it's neighbors
+        world.setBlockSource(20, 5, 20, 14);
+        assertTrue(countSeeds(handler, 20, 5, 20) <= 7);
+        world.setOpaque(20, 45, 20, false);
+        assertTrue(countSeeds(handler, 20, 45, 20) <= 7);
+    }
+
+    @Test
+    public void testQueuedChanges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        CountingPropagator propagator = new CountingPropagator(new MinecraftChunkAwareLightPropagator(world, world));
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+
+        for (int tick = 0; tick < 20; tick++) {
+            for (int j = 0; j < 20; j++) {
+                // changes close together, so that some of them hit the same block
+                int x = 16 + rand.nextInt(8);
+                int y = 12 + rand.nextInt(16);
+                int z = 16 + rand.nextInt(8);
+                handler.queueChange(x, y, z);
+                if (rand.nextBoolean()) {
+                    world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+                } else {
+                    world.setBlockSource(x, y, z, rand.nextInt(16));
+                }
+            }
+            handler.flush(propagator);
+            assertEquals(0, handler.getQueuedChangeCount());
+            world.verifyLight();
+        }
+        assertTrue(propagator.calls <= 20);
+    }
+
+    @Test
+    public void testCancelledChanges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        CountingPropagator propagator = new CountingPropagator(new MinecraftChunkAwareLightPropagator(world, world));
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+
+        handler.queueChange(20, 30, 20);
+        world.setBlockSource(20, 30, 20, 14);
+        handler.queueChange(20, 30, 20);
+        world.setBlockSource(20, 30, 20, 0);
+        handler.queueChange(5, 10, 5);
+        world.setOpaque(5, 10, 5, !world.isOpaque(5, 10, 5));
+        handler.queueChange(5, 10, 5);
+        world.setOpaque(5, 10, 5, !world.isOpaque(5, 10, 5));
+        assertEquals(2, handler.getQueuedChangeCount());
+
+        handler.flush(propagator);
+        assertEquals(0, propagator.calls);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testDuplicateChanges() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 3, 3);
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        for (int i = 0; i < 3; i++) {
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 4; z++) {
+                        handler.queueChange(x, y, z);
+                    }
+                }
+            }
+        }
+        // outside of the world
+        handler.queueChange(-1, 0, 0);
+        assertEquals(16 * 16 * 4, handler.getQueuedChangeCount());
+    }
+
+    @Test
+    public void testStatsListener() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 10, 50);
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        List<LightUpdateStats> reported = new ArrayList<>();
+        handler.setStatsListener((reporter, stats) -> {
+            assertSame(handler, reporter);
+            reported.add(stats);
+        });
+
+        Vec3List sky = new Vec3List(16);
+        Vec3List block = new Vec3List(16);
+        handler.apply(20, 30, 20, sky, block);
+        assertEquals(1, reported.size());
+        assertEquals(sky.size() + block.size(), reported.get(0).getSeeded());
+
+        handler.queueChange(20, 30, 20);
+        world.setBlockSource(20, 30, 20, 14);
+        handler.flush(new MinecraftChunkAwareLightPropagator(world, world));
+        world.verifyLight();
+        assertEquals(2, reported.size());
+        // the changed block and its 6 neighbors, sky light didn't change below it
+        assertEquals(7, reported.get(1).getSeeded());
+
+        handler.setStatsListener(null);
+        handler.apply(20, 30, 20, new Vec3List(16), new Vec3List(16));
+        assertEquals(2, reported.size());
+    }
+
+    private static final class CountingPropagator implements LightPropagator {
+
+        private final LightPropagator delegate;
+        int calls;
+
+        CountingPropagator(LightPropagator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override public void update(Vec3List posList, EnumSet<LightType> types) {
+            calls++;
+            delegate.update(posList, types);
+        }
+    }
+
+    private static int countSeeds(BlockUpdateLightHandler handler, int x, int y, int z) {
+        Vec3List sky = new Vec3List(16);
+        Vec3List block = new Vec3List(16);
+        handler.apply(x, y, z, sky, block);
+        int count = 0;
+        while (sky.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void updateLight(BoxWorldAccessTestImpl world, MinecraftChunkAwareLightPropagator propagator,
+        BlockUpdateLightHandler handler, Vec3List changed) {
+        Vec3List sky = new Vec3List(16);
+        Vec3List block = new Vec3List(16);
+        handler.apply(changed, sky, block);
+        propagator.update(sky, EnumSet.of(LightType.SKY));
+        propagator.update(block, EnumSet.of(LightType.BLOCK));
+    }
 }
@@ -23,18 +23,34 @@
  */
 package io.github.opencubicchunks.relight.handler;
 
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.lightEverything;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
 import io.github.opencubicchunks.relight.propagator.NoopLightPropagator;
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
 import io.github.opencubicchunks.relight.testutil.WorldAccessTestImpl;
 import io.github.opencubicchunks.relight.util.BlockPos;
 import io.github.opencubicchunks.relight.util.ChunkPos;
 import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
 import io.github.opencubicchunks.relight.util.Vec3List;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class TestFirstLightHandler {
     @Test
@@ -94,6 +110,306 @@ public class TestFirstLightHandler {
         doTest(preLoadedChunks, newChunks, oldOpaqueBlocks, newOpaqueBlocks, oldBlockLightSources, newBlockLightSources);
     }
 
+    @Test
+    public void testReusedHandlerSameOutput() {
+        Random rand = new Random(42);
+        Set<ChunkPos> preLoadedChunks = new HashSet<>();
+        Set<ChunkPos> newChunks = new HashSet<>();
+        Set<BlockPos> oldOpaqueBlocks = new HashSet<>();
+        Set<BlockPos> newOpaqueBlocks = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            preLoadedChunks.add(new ChunkPos(rand.nextInt(5), rand.nextInt(20), rand.nextInt(5)));
+        }
+        for (int i = 0; i < 40; i++) {
+            newChunks.add(new ChunkPos(rand.nextInt(5), rand.nextInt(20), rand.nextInt(5)));
+        }
+        newChunks.removeAll(preLoadedChunks);
+        for (ChunkPos pos : preLoadedChunks) {
+            for (int i = 0; i < 100; i++) {
+                oldOpaqueBlocks.add(new BlockPos(pos.blockX(rand.nextInt(16)), pos.blockY(rand.nextInt(16)), pos.blockZ(rand.nextInt(16))));
+            }
+        }
+        for (ChunkPos pos : newChunks) {
+            for (int i = 0; i < 100; i++) {
+                newOpaqueBlocks.add(new BlockPos(pos.blockX(rand.nextInt(16)), pos.blockY(rand.nextInt(16)), pos.blockZ(rand.nextInt(16))));
+            }
+        }
+        WorldAccessTestImpl worldAccess = new WorldAccessTestImpl(preLoadedChunks, newChunks, oldOpaqueBlocks, newOpaqueBlocks,
+            new HashSet<>(), new HashSet<>());
+
+        List<ChunkPos> batch = new ArrayList<>(newChunks);
+        List<ChunkPos> firstHalf = batch.subList(0, batch.size() / 2);
+        List<ChunkPos> secondHalf = batch.subList(batch.size() / 2, batch.size());
+
+        FirstLightHandler reused = new FirstLightHandler(worldAccess);
+        Set<BlockPos> reusedFirst = applyToSet(reused, firstHalf);
+        Set<BlockPos> reusedSecond = applyToSet(reused, secondHalf);
+
+        assertEquals(applyToSet(new FirstLightHandler(worldAccess), firstHalf), reusedFirst);
+        assertEquals(applyToSet(new FirstLightHandler(worldAccess), secondHalf), reusedSecond);
+    }
+
+    @Test
+    public void testSourcesAndEdgesBelowSurface() {
+        doPropagatorTest(FirstLightHandler.SeedMode.SOURCES_AND_EDGES, new ChunkPos(1, 1, 1), 6);
+    }
+
+    @Test
+    public void testSourcesAndEdgesAtSurface() {
+        doPropagatorTest(FirstLightHandler.SeedMode.SOURCES_AND_EDGES, new ChunkPos(1, 2, 1), 6);
+    }
+
+    @Test
+    public void testSourcesAndEdgesPorousSurface() {
+        doPropagatorTest(FirstLightHandler.SeedMode.SOURCES_AND_EDGES, new ChunkPos(1, 2, 1), 2);
+    }
+
+    @Test
+    public void testSourcesAndEdgesAtWorldEdge() {
+        doPropagatorTest(FirstLightHandler.SeedMode.SOURCES_AND_EDGES, new ChunkPos(0, 2, 2), 6);
+    }
+
+    @Test
+    public void testAllBlocksWithPropagator() {
+        doPropagatorTest(FirstLightHandler.SeedMode.ALL_BLOCKS, new ChunkPos(1, 2, 1), 6);
+    }
+
+    @Test
+    public void testSourcesAndEdgesFillsExposedChunks() {
+        int[] blockWrites = new int[1];
+        List<ChunkPos> filled = new ArrayList<>();
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 3, 3) {
+            private boolean filling;
+
+            @Override public void setLight(int x, int y, int z, int value, LightType type) {
+                if (!filling && type == LightType.SKY) {
+                    blockWrites[0]++;
+                }
+                super.setLight(x, y, z, value, type);
+            }
+
+            @Override public void fillChunk(int chunkX, int chunkY, int chunkZ, int value, LightType type) {
+                filled.add(new ChunkPos(chunkX, chunkY, chunkZ));
+                filling = true;
+                super.fillChunk(chunkX, chunkY, chunkZ, value, type);
+                filling = false;
+            }
+        };
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                for (int y = 0; y <= 20; y++) {
+                    world.setOpaque(x, y, z, true);
+                }
+            }
+        }
+        List<ChunkPos> newChunks = Arrays.asList(new ChunkPos(1, 2, 1), new ChunkPos(1, 1, 1));
+        for (ChunkPos pos : newChunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), false);
+        }
+        world.updateHeightMaps();
+        for (ChunkPos pos : newChunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), true);
+        }
+
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        new FirstLightHandler(world, FirstLightHandler.SeedMode.SOURCES_AND_EDGES).apply(newChunks, sky, block);
+        // only the chunk fully above the surface, the other one has blocks above and below it
+        assertEquals(Collections.singletonList(new ChunkPos(1, 2, 1)), filled);
+        assertEquals(16 * 16 * 11, blockWrites[0]);
+    }
+
+    /**
+     * Lights a random world with one chunk unloaded, then loads it. On average 1 in airChance blocks below the surface is not opaque.
+     */
+    private void doPropagatorTest(FirstLightHandler.SeedMode mode, ChunkPos newChunk, int airChance) {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 3, 3);
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                int surface = 30 + rand.nextInt(10);
+                for (int y = 0; y <= surface; y++) {
+                    if (rand.nextInt(airChance) != 0) {
+                        world.setOpaque(x, y, z, true);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            world.setBlockSource(rand.nextInt(world.sizeX()), rand.nextInt(world.sizeY()), rand.nextInt(world.sizeZ()), 1 + rand.nextInt(15));
+        }
+        world.setChunkLoaded(newChunk.getX(), newChunk.getY(), newChunk.getZ(), false);
+        world.updateHeightMaps();
+
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        lightEverything(world, propagator);
+
+        world.setChunkLoaded(newChunk.getX(), newChunk.getY(), newChunk.getZ(), true);
+        Vec3List updatedSky = new Vec3List(4096);
+        Vec3List updatedBlock = new Vec3List(4096);
+        new FirstLightHandler(world, mode).apply(Collections.singleton(newChunk), updatedSky, updatedBlock);
+        world.updateHeightMaps();
+
+        propagator.update(updatedSky, EnumSet.of(LightType.SKY));
+        propagator.update(updatedBlock, EnumSet.of(LightType.BLOCK));
+
+        world.verifyLight();
+    }
+
+    @Test
+    public void testParallelSameAsSequential() throws InterruptedException {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(6, 3, 6);
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                int surface = 20 + rand.nextInt(10);
+                for (int y = 0; y <= surface; y++) {
+                    world.setOpaque(x, y, z, true);
+                }
+            }
+        }
+        List<ChunkPos> newChunks = new ArrayList<>();
+        for (int x = 0; x < 6; x++) {
+            for (int y = 0; y < 3; y++) {
+                for (int z = 0; z < 6; z++) {
+                    if (rand.nextBoolean()) {
+                        newChunks.add(new ChunkPos(x, y, z));
+                        world.setChunkLoaded(x, y, z, false);
+                    }
+                }
+            }
+        }
+        world.updateHeightMaps();
+        for (ChunkPos pos : newChunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), true);
+        }
+
+        for (FirstLightHandler.SeedMode mode : FirstLightHandler.SeedMode.values()) {
+            Vec3List sequentialSky = new Vec3List(4096);
+            Vec3List sequentialBlock = new Vec3List(4096);
+            new FirstLightHandler(world, mode).apply(newChunks, sequentialSky, sequentialBlock);
+            List<BlockPos> expectedSky = toList(sequentialSky);
+            List<BlockPos> expectedBlock = toList(sequentialBlock);
+
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                FirstLightHandler parallelHandler = new FirstLightHandler(world, mode);
+                // twice, to check that reused processors don't keep any state
+                for (int i = 0; i < 2; i++) {
+                    Vec3List parallelSky = new Vec3List(4096);
+                    Vec3List parallelBlock = new Vec3List(4096);
+                    parallelHandler.applyParallel(newChunks, parallelSky, parallelBlock, executor, 5);
+
+                    assertEquals(expectedSky, toList(parallelSky));
+                    assertEquals(expectedBlock, toList(parallelBlock));
+                }
+            } finally {
+                executor.shutdown();
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void testStatsListener() throws InterruptedException {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        List<ChunkPos> newChunks = new ArrayList<>();
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 2; y++) {
+                for (int z = 0; z < 2; z++) {
+                    newChunks.add(new ChunkPos(x, y, z));
+                }
+            }
+        }
+        List<LightUpdateStats> reported = new ArrayList<>();
+        FirstLightHandler handler = new FirstLightHandler(world, FirstLightHandler.SeedMode.ALL_BLOCKS);
+        handler.setStatsListener((reporter, stats) -> {
+            assertSame(handler, reporter);
+            reported.add(stats);
+        });
+
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        sky.add(0, 0, 0);
+        handler.apply(newChunks, sky, block);
+        assertEquals(1, reported.size());
+        LightUpdateStats sequential = reported.get(0);
+        // positions that were already in the output are not counted
+        assertEquals(sky.size() + block.size() - 1, sequential.getSeeded());
+        assertEquals(8, sequential.getCubesTouched());
+        assertTrue(sequential.getWorldLookups() >= 8);
+        assertEquals(0, sequential.getDequeued());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            handler.applyParallel(newChunks, new Vec3List(4096), new Vec3List(4096), executor, 4);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(2, reported.size());
+        LightUpdateStats parallel = reported.get(1);
+        assertEquals(sequential.getSeeded(), parallel.getSeeded());
+        assertEquals(sequential.getCubesTouched(), parallel.getCubesTouched());
+        assertEquals(sequential.getWorldLookups(), parallel.getWorldLookups());
+
+        handler.setStatsListener(null);
+        handler.apply(newChunks, new Vec3List(4096), new Vec3List(4096));
+        assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void testNoDuplicateOutputs() {
+        for (FirstLightHandler.SeedMode mode : FirstLightHandler.SeedMode.values()) {
+            BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(1, 2, 1);
+            // the height diff of the new surface is inside the new chunks
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    world.setOpaque(x, 20, z, true);
+                }
+            }
+            List<ChunkPos> newChunks = Arrays.asList(new ChunkPos(0, 1, 0), new ChunkPos(0, 0, 0));
+            for (ChunkPos pos : newChunks) {
+                world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), false);
+            }
+            world.updateHeightMaps();
+            for (ChunkPos pos : newChunks) {
+                world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), true);
+            }
+
+            Vec3List sky = new Vec3List(4096);
+            Vec3List block = new Vec3List(4096);
+            new FirstLightHandler(world, mode).apply(newChunks, sky, block);
+            List<BlockPos> skyList = toList(sky);
+            List<BlockPos> blockList = toList(block);
+            assertEquals(mode.toString(), new HashSet<>(skyList).size(), skyList.size());
+            assertEquals(mode.toString(), new HashSet<>(blockList).size(), blockList.size());
+            if (mode == FirstLightHandler.SeedMode.ALL_BLOCKS) {
+                assertEquals(2 * 4096, skyList.size());
+                assertEquals(2 * 4096, blockList.size());
+            }
+        }
+    }
+
+    private static List<BlockPos> toList(Vec3List vec3List) {
+        List<BlockPos> list = new ArrayList<>();
+        while (vec3List.next()) {
+            list.add(new BlockPos(vec3List.getX(), vec3List.getY(), vec3List.getZ()));
+        }
+        return list;
+    }
+
+    private static Set<BlockPos> applyToSet(FirstLightHandler handler, Collection<ChunkPos> chunks) {
+        Vec3List sky = new Vec3List(1024);
+        Vec3List block = new Vec3List(1024);
+        handler.apply(chunks, sky, block);
+        Set<BlockPos> positions = new HashSet<>();
+        while (sky.next()) {
+            positions.add(new BlockPos(sky.getX(), sky.getY(), sky.getZ()));
+        }
+        return positions;
+    }
+
     private void doTest(Set<ChunkPos> preLoadedChunks,
         Set<ChunkPos> newChunks,
         Set<BlockPos> oldOpaqueBlocks,
@@ -23,6 +23,321 @@
  */
 package io.github.opencubicchunks.relight.handler;
 
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.allBlocks;
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.litWorld;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.PendingEdgeStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
 public class TestOnLoadLightHandler {
 
+    @Test
+    public void testUnchangedWhileUnloaded() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        List<ChunkPos> chunks = Collections.singletonList(new ChunkPos(1, 1, 1));
+        unload(world, chunks, null);
+        load(world, chunks, null);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testChangedAround() {
+        for (ChunkPos pos : Arrays.asList(new ChunkPos(1, 1, 1), new ChunkPos(1, 2, 1), new ChunkPos(0, 0, 2))) {
+            Random rand = new Random(42);
+            BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+            List<ChunkPos> chunks = Collections.singletonList(pos);
+            unload(world, chunks, null);
+            changeLoaded(world, rand, 300, null);
+            load(world, chunks, null);
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testRaisedTop() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        // a roof in the unloaded chunk, while it's unloaded sky light reaches everything below it
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        for (int x = 16; x < 32; x++) {
+            for (int z = 16; z < 32; z++) {
+                handler.queueChange(x, 44, z);
+                world.setOpaque(x, 44, z, true);
+            }
+        }
+        handler.flush(new MinecraftChunkAwareLightPropagator(world, world));
+        List<ChunkPos> chunks = Collections.singletonList(new ChunkPos(1, 2, 1));
+        unload(world, chunks, null);
+        load(world, chunks, null);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testLitChunkNextToDarker() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 1);
+        // a roof over x 0..15, while cube (1, 1, 0) is unloaded the blocks under it are lit only from below
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                world.setOpaque(x, world.sizeY() - 1, z, true);
+            }
+        }
+        List<ChunkPos> chunks = Collections.singletonList(new ChunkPos(1, 1, 0));
+        unload(world, chunks, null);
+        assertTrue(world.getLight(15, 20, 5, LightType.SKY) < 14);
+        // the loaded cube was lit on it's own and is sky light source everywhere
+        for (int x = 16; x < 32; x++) {
+            for (int y = 16; y < 32; y++) {
+                for (int z = 0; z < 16; z++) {
+                    world.setLight(x, y, z, 15, LightType.SKY);
+                }
+            }
+        }
+        load(world, chunks, null);
+        assertEquals(14, world.getLight(15, 20, 5, LightType.SKY));
+        world.verifyLight();
+    }
+
+    @Test
+    public void testManyChunks() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        List<ChunkPos> chunks = new ArrayList<>();
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                for (int z = 0; z < 3; z++) {
+                    if (rand.nextInt(3) == 0) {
+                        chunks.add(new ChunkPos(x, y, z));
+                    }
+                }
+            }
+        }
+        unload(world, chunks, null);
+        changeLoaded(world, rand, 300, null);
+        load(world, chunks, null);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testOnlyLoadedFaces() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        assertEquals(6 * 256, countSeeds(world, new ChunkPos(1, 1, 1), LightType.BLOCK));
+        assertEquals(3 * 256, countSeeds(world, new ChunkPos(0, 0, 0), LightType.BLOCK));
+        // sky light is consistent with the heightmap everywhere, nothing else to add
+        assertEquals(6 * 256, countSeeds(world, new ChunkPos(1, 1, 1), LightType.SKY));
+
+        // faces between chunks loaded together are added once
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        new OnLoadLightHandler(world).apply(Arrays.asList(new ChunkPos(1, 1, 1), new ChunkPos(2, 1, 1)), sky, block);
+        assertEquals(10 * 256, count(block));
+    }
+
+    @Test
+    public void testStatsListener() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        OnLoadLightHandler handler = new OnLoadLightHandler(world);
+        List<LightUpdateStats> reported = new ArrayList<>();
+        handler.setStatsListener((reporter, stats) -> {
+            assertSame(handler, reporter);
+            reported.add(stats);
+        });
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        handler.apply(Collections.singletonList(new ChunkPos(1, 1, 1)), sky, block);
+        assertEquals(1, reported.size());
+        assertEquals(2 * 6 * 256, reported.get(0).getSeeded());
+        assertEquals(1, reported.get(0).getCubesTouched());
+
+        handler.setStatsListener(null);
+        handler.apply(Collections.singletonList(new ChunkPos(1, 1, 1)), sky, block);
+        assertEquals(1, reported.size());
+    }
+
+    @Test
+    public void testPendingEdges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        PendingEdgeStore store = new PendingEdgeStore();
+        List<ChunkPos> chunks = Arrays.asList(new ChunkPos(1, 1, 1), new ChunkPos(1, 2, 1), new ChunkPos(2, 0, 0));
+        unload(world, chunks, store);
+        changeLoaded(world, rand, 300, store);
+        load(world, chunks, store);
+        world.verifyLight();
+        for (ChunkPos pos : chunks) {
+            assertFalse(store.hasEdges(pos));
+        }
+    }
+
+    @Test
+    public void testPendingEdgesUnchanged() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        PendingEdgeStore store = new PendingEdgeStore();
+        ChunkPos pos = new ChunkPos(1, 0, 1);
+        world.setChunkLoaded(1, 0, 1, false);
+
+        // nothing was cut off by the unloaded chunk, no need to update any of it's faces
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        world.setChunkLoaded(1, 0, 1, true);
+        new OnLoadLightHandler(world, store).apply(Collections.singletonList(pos), sky, block);
+        assertEquals(0, count(block));
+    }
+
+    @Test
+    public void testPendingEdgesLightAdded() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        PendingEdgeStore store = new PendingEdgeStore();
+        carveTunnel(world);
+        List<ChunkPos> chunks = Collections.singletonList(new ChunkPos(1, 0, 1));
+        unload(world, chunks, store);
+
+        // light from the torch has to continue into the unloaded chunk when it's loaded
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        handler.queueChange(14, 8, 24);
+        world.setBlockSource(14, 8, 24, 14);
+        handler.flush(new MinecraftChunkAwareLightPropagator(world, world, store));
+
+        load(world, chunks, store);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testPendingEdgesNewNeighbor() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = litWorld(rand, 20, 100);
+        PendingEdgeStore store = new PendingEdgeStore();
+        carveTunnel(world);
+        // light from the saved chunk has to get into the new chunk when it's loaded
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        handler.queueChange(18, 8, 24);
+        world.setBlockSource(18, 8, 24, 14);
+        handler.flush(new MinecraftChunkAwareLightPropagator(world, world));
+
+        ChunkPos saved = new ChunkPos(1, 0, 1);
+        ChunkPos generated = new ChunkPos(0, 0, 1);
+        List<ChunkPos> both = Arrays.asList(saved, generated);
+        unload(world, both, store);
+        for (int x = generated.minBlockX(); x < generated.minBlockX() + 16; x++) {
+            for (int y = generated.minBlockY(); y < generated.minBlockY() + 16; y++) {
+                for (int z = generated.minBlockZ(); z < generated.minBlockZ() + 16; z++) {
+                    world.setLight(x, y, z, 0, LightType.SKY);
+                    world.setLight(x, y, z, 0, LightType.BLOCK);
+                }
+            }
+        }
+
+        // the new chunk is lit from scratch while the other one is still unloaded
+        world.setChunkLoaded(generated.getX(), generated.getY(), generated.getZ(), true);
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        new FirstLightHandler(world, FirstLightHandler.SeedMode.SOURCES_AND_EDGES, store)
+            .apply(Collections.singletonList(generated), sky, block);
+        world.updateHeightMaps();
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world, store);
+        propagator.update(sky, EnumSet.of(LightType.SKY));
+        propagator.update(block, EnumSet.of(LightType.BLOCK));
+        assertTrue(store.hasEdges(saved));
+
+        load(world, Collections.singletonList(saved), store);
+        world.verifyLight();
+    }
+
+    /**
+     * Carves a tunnel along the X axis at y = 8, z = 24, through the chunks (0, 0, 1), (1, 0, 1) and (2, 0, 1), and relights it.
+     */
+    private static void carveTunnel(BoxWorldAccessTestImpl world) {
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        for (int x = 4; x < 44; x++) {
+            handler.queueChange(x, 8, 24);
+            world.setOpaque(x, 8, 24, false);
+            world.setBlockSource(x, 8, 24, 0);
+        }
+        handler.flush(new MinecraftChunkAwareLightPropagator(world, world));
+        world.verifyLight();
+    }
+
+    private static int countSeeds(BoxWorldAccessTestImpl world, ChunkPos pos, LightType type) {
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        new OnLoadLightHandler(world).apply(Collections.singletonList(pos), sky, block);
+        return count(type == LightType.SKY ? sky : block);
+    }
+
+    private static int count(Vec3List list) {
+        int count = 0;
+        while (list.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Unloads the chunks and relights sky light in the rest of the world for the heightmap without them, as if it was lit while they
+     * were never loaded.
+     */
+    private static void unload(BoxWorldAccessTestImpl world, List<ChunkPos> chunks, PendingEdgeStore store) {
+        for (ChunkPos pos : chunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), false);
+        }
+        world.updateHeightMaps();
+        new MinecraftChunkAwareLightPropagator(world, world, store).update(allBlocks(world), EnumSet.of(LightType.SKY));
+    }
+
+    private static void load(BoxWorldAccessTestImpl world, List<ChunkPos> chunks, PendingEdgeStore store) {
+        for (ChunkPos pos : chunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), true);
+        }
+        world.updateHeightMaps();
+        Vec3List sky = new Vec3List(4096);
+        Vec3List block = new Vec3List(4096);
+        new OnLoadLightHandler(world, store).apply(chunks, sky, block);
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world, store);
+        propagator.update(sky, EnumSet.of(LightType.SKY));
+        propagator.update(block, EnumSet.of(LightType.BLOCK));
+    }
+
+    /**
+     * Changes random blocks in loaded chunks and updates light for them.
+     */
+    private static void changeLoaded(BoxWorldAccessTestImpl world, Random rand, int count, PendingEdgeStore store) {
+        BlockUpdateLightHandler handler = new BlockUpdateLightHandler(world);
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world, store);
+        for (int i = 0; i < count; i++) {
+            int x = rand.nextInt(world.sizeX());
+            int y = rand.nextInt(world.sizeY());
+            int z = rand.nextInt(world.sizeZ());
+            if (!world.isChunkLoaded(x >> 4, y >> 4, z >> 4)) {
+                continue;
+            }
+            handler.queueChange(x, y, z);
+            if (rand.nextBoolean()) {
+                world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+            } else {
+                world.setBlockSource(x, y, z, rand.nextInt(16));
+            }
+        }
+        handler.flush(propagator);
+    }
 }
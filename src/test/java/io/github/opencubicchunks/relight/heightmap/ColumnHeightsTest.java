@@ -0,0 +1,84 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.heightmap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ColumnHeightsTest {
+
+    @Test
+    public void testAddCubes() {
+        Random rand = new Random(42);
+        for (int test = 0; test < 20; test++) {
+            // a column of 4 cubes from y = -32 to 31, random density so that some columns have no opaque block
+            boolean[] opaque = new boolean[16 * 16 * 64];
+            int density = 1 + rand.nextInt(200);
+            for (int i = 0; i < opaque.length; i++) {
+                opaque[i] = rand.nextInt(1000) < density;
+            }
+            ColumnHeights heights = new ColumnHeights();
+            long[] mask = new long[64];
+            for (int cubeY = 1; cubeY >= -2; cubeY--) {
+                for (int i = 0; i < 4096; i++) {
+                    int y = (cubeY << 4) + (i >> 8);
+                    long bit = 1L << i;
+                    mask[i >> 6] = opaque[index(i & 0xF, y, i >> 4 & 0xF)] ? mask[i >> 6] | bit : mask[i >> 6] & ~bit;
+                }
+                heights.addCube(mask, cubeY << 4);
+            }
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    int expected = Integer.MIN_VALUE;
+                    for (int y = 31; y >= -32; y--) {
+                        if (opaque[index(x, y, z)]) {
+                            expected = y;
+                            break;
+                        }
+                    }
+                    assertEquals(expected, heights.getTopY(x, z));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAddCubeKeepsExisting() {
+        ColumnHeights heights = new ColumnHeights();
+        heights.setHeight(3, 4, 100);
+        long[] mask = new long[64];
+        Arrays.fill(mask, -1L);
+        heights.addCube(mask, 0);
+        assertEquals(100, heights.getTopY(3, 4));
+        assertEquals(15, heights.getTopY(4, 3));
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((y + 32) << 8) | z << 4 | x;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.heightmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PackedColumnHeightsTest {
+
+    @Test
+    public void testEmpty() {
+        PackedColumnHeights heights = new PackedColumnHeights(64);
+        for (int i = 0; i < 256; i++) {
+            assertEquals(Integer.MIN_VALUE, heights.getTopY(i & 0xF, i >> 4));
+            assertFalse(heights.exists(i & 0xF, i >> 4));
+        }
+    }
+
+    @Test
+    public void testSameAsColumnHeights() {
+        Random rand = new Random(42);
+        PackedColumnHeights packed = new PackedColumnHeights(64);
+        ColumnHeights expected = new ColumnHeights();
+        for (int i = 0; i < 10000; i++) {
+            int x = rand.nextInt(16);
+            int z = rand.nextInt(16);
+            int y = rand.nextInt(10) == 0 ? Integer.MIN_VALUE : 64 + rand.nextInt(60000) - 30000;
+            packed.setHeight(x, z, y);
+            expected.setHeight(x, z, y);
+        }
+        assertTrue(packed.isPacked());
+        assertSameHeights(expected, packed);
+    }
+
+    @Test
+    public void testOverflow() {
+        Random rand = new Random(42);
+        PackedColumnHeights packed = new PackedColumnHeights(0);
+        ColumnHeights expected = new ColumnHeights();
+        for (int i = 0; i < 100; i++) {
+            int y = rand.nextInt(200) - 100;
+            packed.setHeight(i & 0xF, i >> 4, y);
+            expected.setHeight(i & 0xF, i >> 4, y);
+        }
+        packed.setHeight(3, 4, 40000);
+        expected.setHeight(3, 4, 40000);
+        assertFalse(packed.isPacked());
+        assertSameHeights(expected, packed);
+
+        packed.setHeight(5, 5, Integer.MAX_VALUE);
+        expected.setHeight(5, 5, Integer.MAX_VALUE);
+        packed.setHeight(6, 5, Integer.MIN_VALUE);
+        expected.setHeight(6, 5, Integer.MIN_VALUE);
+        assertSameHeights(expected, packed);
+    }
+
+    @Test
+    public void testSetAndDiff() {
+        PackedColumnHeights heights = new PackedColumnHeights(0);
+        long diff = heights.setAndDiff(1, 2, 10);
+        assertEquals(Integer.MIN_VALUE, PackedColumnHeights.diffOldY(diff));
+        assertEquals(10, PackedColumnHeights.diffNewY(diff));
+
+        diff = heights.setAndDiff(1, 2, -5);
+        assertEquals(10, PackedColumnHeights.diffOldY(diff));
+        assertEquals(-5, PackedColumnHeights.diffNewY(diff));
+        assertEquals(-5, heights.getTopY(1, 2));
+
+        diff = heights.setAndDiff(1, 2, Integer.MIN_VALUE);
+        assertEquals(-5, PackedColumnHeights.diffOldY(diff));
+        assertEquals(Integer.MIN_VALUE, PackedColumnHeights.diffNewY(diff));
+    }
+
+    private static void assertSameHeights(HeightMap expected, HeightMap actual) {
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                assertEquals(expected.getTopY(x, z), actual.getTopY(x, z));
+            }
+        }
+    }
+}
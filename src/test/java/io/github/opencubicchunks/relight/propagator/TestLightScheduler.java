@@ -0,0 +1,154 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.propagator;
+
+import static org.junit.Assert.assertEquals;
+
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+public class TestLightScheduler {
+
+    @Test
+    public void testSchedulingOrderWithoutFocus() {
+        RecordingPropagator propagator = new RecordingPropagator(0);
+        LightScheduler scheduler = new LightScheduler(propagator, propagator::time);
+        for (int i = 0; i < 5; i++) {
+            scheduler.schedule(new ChunkPos(10 - i, 0, 0), single(i), EnumSet.of(LightType.SKY));
+        }
+        scheduler.runAll();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), propagator.ran);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testClosestToFocusFirst() {
+        RecordingPropagator propagator = new RecordingPropagator(0);
+        LightScheduler scheduler = new LightScheduler(propagator, propagator::time);
+        scheduler.schedule(new ChunkPos(20, 0, 0), single(0), EnumSet.of(LightType.SKY));
+        scheduler.schedule(new ChunkPos(-3, 0, 0), single(1), EnumSet.of(LightType.SKY));
+        scheduler.schedule(new ChunkPos(0, 5, 0), single(2), EnumSet.of(LightType.SKY));
+        scheduler.schedule(new ChunkPos(20, 0, 1), single(3), EnumSet.of(LightType.SKY));
+        scheduler.schedule(new ChunkPos(-3, 0, 0), single(4), EnumSet.of(LightType.SKY));
+        scheduler.setFocusPoints(Arrays.asList(new ChunkPos(0, 0, 0), new ChunkPos(20, 0, 1)));
+        scheduler.runAll();
+        assertEquals(Arrays.asList(3, 0, 1, 4, 2), propagator.ran);
+    }
+
+    @Test
+    public void testBudgetDefersFarWork() {
+        RecordingPropagator propagator = new RecordingPropagator(10);
+        LightScheduler scheduler = new LightScheduler(propagator, propagator::time);
+        scheduler.setFocusPoints(Collections.singletonList(new ChunkPos(0, 0, 0)));
+        for (int i = 0; i < 6; i++) {
+            scheduler.schedule(new ChunkPos(5 - i, 0, 0), single(i), EnumSet.of(LightType.BLOCK));
+        }
+
+        assertEquals(3, scheduler.run(25));
+        assertEquals(Arrays.asList(5, 4, 3), propagator.ran);
+        assertEquals(3, scheduler.getPendingCount());
+
+        // the focus moved, the remaining work closest to it goes first
+        propagator.ran.clear();
+        scheduler.setFocusPoints(Collections.singletonList(new ChunkPos(5, 0, 0)));
+        scheduler.schedule(new ChunkPos(0, 0, 0), single(6), EnumSet.of(LightType.BLOCK));
+        assertEquals(2, scheduler.run(20));
+        assertEquals(Arrays.asList(0, 1), propagator.ran);
+        assertEquals(2, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testAlwaysMakesProgress() {
+        RecordingPropagator propagator = new RecordingPropagator(100);
+        LightScheduler scheduler = new LightScheduler(propagator, propagator::time);
+        scheduler.schedule(new ChunkPos(0, 0, 0), single(0), EnumSet.of(LightType.SKY));
+        scheduler.schedule(new ChunkPos(0, 0, 0), single(1), EnumSet.of(LightType.SKY));
+        assertEquals(0, scheduler.run(0));
+        assertEquals(1, scheduler.run(1));
+        assertEquals(1, scheduler.run(1));
+        assertEquals(Arrays.asList(0, 1), propagator.ran);
+        assertEquals(0, scheduler.run(1));
+    }
+
+    @Test
+    public void testScheduledUpdatesLightWorld() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 2, 3);
+        LightScheduler scheduler = new LightScheduler(new MinecraftChunkAwareLightPropagator(world, world));
+        scheduler.setFocusPoints(Collections.singletonList(new ChunkPos(1, 1, 1)));
+        for (int cx = 0; cx < 3; cx++) {
+            for (int cy = 0; cy < 2; cy++) {
+                for (int cz = 0; cz < 3; cz++) {
+                    Vec3List list = new Vec3List(4096);
+                    for (int i = 0; i < 4096; i++) {
+                        list.add((cx << 4) + (i & 0xF), (cy << 4) + (i >> 8), (cz << 4) + (i >> 4 & 0xF));
+                    }
+                    scheduler.schedule(new ChunkPos(cx, cy, cz), list, EnumSet.allOf(LightType.class));
+                }
+            }
+        }
+        world.setOpaque(20, 10, 20, true);
+        world.setBlockSource(5, 5, 5, 14);
+        scheduler.runAll();
+        world.verifyLight();
+    }
+
+    private static Vec3List single(int id) {
+        Vec3List list = new Vec3List(1);
+        list.add(id, 0, 0);
+        return list;
+    }
+
+    /**
+     * Records the x coordinate of the first position of each update, each update advances the clock by a fixed time.
+     */
+    private static class RecordingPropagator implements LightPropagator {
+
+        final List<Integer> ran = new ArrayList<>();
+        private final long updateTime;
+        private long time;
+
+        RecordingPropagator(long updateTime) {
+            this.updateTime = updateTime;
+        }
+
+        long time() {
+            return time;
+        }
+
+        @Override public void update(Vec3List posList, EnumSet<LightType> types) {
+            posList.next();
+            ran.add(posList.getX());
+            time += updateTime;
+        }
+    }
+}
@@ -23,8 +23,227 @@
  */
 package io.github.opencubicchunks.relight.propagator;
 
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.allBlocks;
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.lightEverything;
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.randomWorld;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
 public class TestMinecraftChunkAwareLightPropagator {
 
+    @Test
+    public void testEmptyWorld() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        lightEverything(world);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testRandomWorld() {
+        BoxWorldAccessTestImpl world = randomWorld(new Random(42));
+        lightEverything(world);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testBlockChanges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = randomWorld(rand);
+        lightEverything(world);
+
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        for (int i = 0; i < 40; i++) {
+            int x = rand.nextInt(world.sizeX());
+            int y = rand.nextInt(world.sizeY());
+            int z = rand.nextInt(world.sizeZ());
+            if (rand.nextBoolean()) {
+                world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+            } else {
+                world.setBlockSource(x, y, z, rand.nextInt(16));
+            }
+            propagator.update(x, y, z, EnumSet.of(LightType.BLOCK));
+
+            // sky light sources may change in the whole column
+            Vec3List column = new Vec3List(world.sizeY());
+            for (int by = 0; by < world.sizeY(); by++) {
+                column.add(x, by, z);
+            }
+            propagator.update(column, EnumSet.of(LightType.SKY));
+
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testBlockChangesBothTypes() {
+        Random rand = new Random(7);
+        BoxWorldAccessTestImpl world = randomWorld(rand);
+        lightEverything(world);
+
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        for (int i = 0; i < 40; i++) {
+            int x = rand.nextInt(world.sizeX());
+            int y = rand.nextInt(world.sizeY());
+            int z = rand.nextInt(world.sizeZ());
+            if (rand.nextBoolean()) {
+                world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+            } else {
+                world.setBlockSource(x, y, z, rand.nextInt(16));
+            }
+            // both types propagate together in one pass
+            Vec3List column = new Vec3List(world.sizeY());
+            for (int by = 0; by < world.sizeY(); by++) {
+                column.add(x, by, z);
+            }
+            propagator.update(column, EnumSet.allOf(LightType.class));
+
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testUniformChunks() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 3, 2);
+        // solid bottom layer of cubes, open sky in the top layer and a mix in between
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                for (int y = 0; y < 16; y++) {
+                    world.setOpaque(x, y, z, true);
+                }
+            }
+        }
+        world.setOpaque(5, 20, 5, true);
+        world.setBlockSource(20, 16, 9, 15);
+
+        int[] solidWrites = {0};
+        List<ChunkPos> filled = new ArrayList<>();
+        LightDataWriter writer = new LightDataWriter() {
+            @Override public void setLight(int x, int y, int z, int value, LightType type) {
+                if (y < 16) {
+                    solidWrites[0]++;
+                }
+                world.setLight(x, y, z, value, type);
+            }
+
+            @Override public void fillChunk(int chunkX, int chunkY, int chunkZ, int value, LightType type) {
+                filled.add(new ChunkPos(chunkX, chunkY, chunkZ));
+                LightDataWriter.super.fillChunk(chunkX, chunkY, chunkZ, value, type);
+            }
+        };
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, writer);
+        propagator.update(allBlocks(world), EnumSet.allOf(LightType.class));
+        world.verifyLight();
+        assertEquals(0, solidWrites[0]);
+        // all cubes above the solid layer except the one with the opaque block are sky light sources everywhere
+        assertEquals(7, filled.size());
+        assertFalse(filled.contains(new ChunkPos(0, 1, 0)));
+
+        // light in the solid cube isn't uniform anymore, so it's updated normally
+        world.setOpaque(20, 15, 9, false);
+        propagator.update(20, 15, 9, EnumSet.allOf(LightType.class));
+        world.verifyLight();
+        world.setOpaque(20, 15, 9, true);
+        propagator.update(allBlocks(world), EnumSet.allOf(LightType.class));
+        world.verifyLight();
+    }
+
+    @Test
+    public void testSeedsInLitUniformChunk() {
+        for (EnumSet<LightType> types : Arrays.asList(EnumSet.of(LightType.SKY), EnumSet.allOf(LightType.class))) {
+            BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 1);
+            // a roof over x 0..15, cube (1, 1, 0) next to it is sky light source everywhere
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < world.sizeZ(); z++) {
+                    world.setOpaque(x, world.sizeY() - 1, z, true);
+                }
+            }
+            lightEverything(world);
+            // the cube under the roof is loaded but not lit yet
+            for (int x = 0; x < 16; x++) {
+                for (int y = 16; y < 32; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        world.setLight(x, y, z, 0, LightType.SKY);
+                    }
+                }
+            }
+            // only the lit side of the seam is seeded, light has to be pushed from there
+            Vec3List seeds = new Vec3List(256);
+            for (int y = 16; y < 32; y++) {
+                for (int z = 0; z < 16; z++) {
+                    seeds.add(16, y, z);
+                }
+            }
+            new MinecraftChunkAwareLightPropagator(world, world).update(seeds, types);
+            assertEquals(types.toString(), 14, world.getLight(15, 20, 5, LightType.SKY));
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testStatsListener() {
+        BoxWorldAccessTestImpl world = randomWorld(new Random(42));
+        MinecraftChunkAwareLightPropagator propagator = new MinecraftChunkAwareLightPropagator(world, world);
+        List<LightUpdateStats> reported = new ArrayList<>();
+        propagator.setStatsListener((reporter, stats) -> {
+            assertSame(propagator, reporter);
+            reported.add(stats);
+        });
+        propagator.update(allBlocks(world), EnumSet.allOf(LightType.class));
+        world.verifyLight();
+
+        assertEquals(1, reported.size());
+        LightUpdateStats stats = reported.get(0);
+        assertEquals(world.sizeX() * world.sizeY() * world.sizeZ(), stats.getSeeded());
+        assertTrue(stats.getDequeued() > 0);
+        // each stale entry is counted once, even if both light types in it are stale
+        assertTrue(stats.getRequeued() <= stats.getDequeued());
+        // the 8 cubes of the world and unloaded ones around them that light tried to reach
+        assertTrue(stats.getCubesTouched() >= 8);
+        assertTrue(stats.getWorldLookups() >= stats.getCubesTouched());
+
+        // a single unchanged block doesn't do much
+        propagator.update(5, 5, 5, EnumSet.of(LightType.BLOCK));
+        assertEquals(2, reported.size());
+        assertEquals(1, reported.get(1).getSeeded());
+        assertTrue(reported.get(1).getDequeued() < stats.getDequeued());
+
+        propagator.setStatsListener(null);
+        propagator.update(5, 5, 5, EnumSet.of(LightType.BLOCK));
+        assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void testLightAtUnloadedEdge() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(1, 1, 1);
+        world.setBlockSource(0, 0, 0, 15);
+        world.setBlockSource(15, 15, 15, 15);
+        lightEverything(world);
+        world.verifyLight();
+    }
+
+    @Test
+    public void testSeedsOutsidePackedYRange() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(1, 272, 1);
+        world.setBlockSource(3, 5, 3, 15);
+        world.setBlockSource(7, world.sizeY() - 10, 7, 15);
+        world.setOpaque(5, world.sizeY() - 1, 5, true);
+        lightEverything(world);
+        world.verifyLight();
+    }
 }
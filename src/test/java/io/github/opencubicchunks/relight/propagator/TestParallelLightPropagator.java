@@ -0,0 +1,236 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.propagator;
+
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.lightEverything;
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.randomWorld;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.LightUpdateStats;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import io.github.opencubicchunks.relight.world.PendingEdgeStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestParallelLightPropagator {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testEmptyWorld() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        lightEverything(world, new ParallelLightPropagator(world, world, executor));
+        world.verifyLight();
+    }
+
+    @Test
+    public void testRandomWorld() {
+        BoxWorldAccessTestImpl world = randomWorld(new Random(42));
+        lightEverything(world, new ParallelLightPropagator(world, world, executor));
+        world.verifyLight();
+    }
+
+    @Test
+    public void testBlockChanges() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = randomWorld(rand);
+        ParallelLightPropagator propagator = new ParallelLightPropagator(world, world, executor);
+        lightEverything(world, propagator);
+
+        for (int i = 0; i < 40; i++) {
+            int x = rand.nextInt(world.sizeX());
+            int y = rand.nextInt(world.sizeY());
+            int z = rand.nextInt(world.sizeZ());
+            if (rand.nextBoolean()) {
+                world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+            } else {
+                world.setBlockSource(x, y, z, rand.nextInt(16));
+            }
+            propagator.update(x, y, z, EnumSet.of(LightType.BLOCK));
+
+            Vec3List column = new Vec3List(world.sizeY());
+            for (int by = 0; by < world.sizeY(); by++) {
+                column.add(x, by, z);
+            }
+            propagator.update(column, EnumSet.of(LightType.SKY));
+
+            world.verifyLight();
+        }
+    }
+
+    @Test
+    public void testChangesAtCubeBorders() {
+        Random rand = new Random(42);
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        // a roof keeps sky light out, so that block light is visible everywhere
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                world.setOpaque(x, world.sizeY() - 1, z, true);
+            }
+        }
+        ParallelLightPropagator propagator = new ParallelLightPropagator(world, world, executor);
+        lightEverything(world, propagator);
+
+        for (int i = 0; i < 60; i++) {
+            int x = 14 + rand.nextInt(4);
+            int y = 14 + rand.nextInt(4);
+            int z = rand.nextInt(world.sizeZ());
+            if (rand.nextInt(3) == 0) {
+                world.setOpaque(x, y, z, !world.isOpaque(x, y, z));
+            } else {
+                world.setBlockSource(x, y, z, world.getLightSource(x, y, z, LightType.BLOCK) > 0 ? 0 : 15);
+            }
+            propagator.update(x, y, z, EnumSet.of(LightType.BLOCK));
+            world.verifyLight(LightType.BLOCK);
+        }
+    }
+
+    @Test
+    public void testOpenedWallAtCubeBorder() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 1, 1);
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                world.setOpaque(15, y, z, true);
+            }
+        }
+        world.setBlockSource(16, 8, 8, 15);
+        ParallelLightPropagator propagator = new ParallelLightPropagator(world, world, executor);
+        lightEverything(world, propagator);
+
+        // the only light next to the opened block comes from the other cube
+        world.setOpaque(15, 8, 8, false);
+        propagator.update(15, 8, 8, EnumSet.allOf(LightType.class));
+        world.verifyLight();
+    }
+
+    @Test
+    public void testLightAtUnloadedEdge() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(1, 1, 1);
+        world.setBlockSource(0, 0, 0, 15);
+        world.setBlockSource(15, 15, 15, 15);
+        lightEverything(world, new ParallelLightPropagator(world, world, executor));
+        world.verifyLight();
+    }
+
+    @Test
+    public void testPendingEdgesMatchSequential() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 1, 3);
+        world.setChunkLoaded(1, 0, 1, false);
+        world.setBlockSource(8, 8, 8, 15);
+        world.setBlockSource(40, 3, 20, 15);
+        PendingEdgeStore sequential = new PendingEdgeStore();
+        lightEverything(world, new MinecraftChunkAwareLightPropagator(world, world, sequential));
+
+        BoxWorldAccessTestImpl parallelWorld = new BoxWorldAccessTestImpl(3, 1, 3);
+        parallelWorld.setChunkLoaded(1, 0, 1, false);
+        parallelWorld.setBlockSource(8, 8, 8, 15);
+        parallelWorld.setBlockSource(40, 3, 20, 15);
+        PendingEdgeStore parallel = new PendingEdgeStore();
+        lightEverything(parallelWorld, new ParallelLightPropagator(parallelWorld, parallelWorld, parallel, executor));
+
+        ChunkPos unloaded = new ChunkPos(1, 0, 1);
+        assertEquals(sequential.size(), parallel.size());
+        assertArrayEquals(sequential.getEdges(unloaded), parallel.getEdges(unloaded));
+    }
+
+    @Test
+    public void testStatsListener() {
+        BoxWorldAccessTestImpl world = randomWorld(new Random(42));
+        ParallelLightPropagator propagator = new ParallelLightPropagator(world, world, executor);
+        List<LightUpdateStats> reported = new ArrayList<>();
+        propagator.setStatsListener((reporter, stats) -> {
+            assertSame(propagator, reporter);
+            reported.add(stats);
+        });
+        lightEverything(world, propagator);
+        world.verifyLight();
+
+        assertEquals(1, reported.size());
+        LightUpdateStats stats = reported.get(0);
+        assertEquals(world.sizeX() * world.sizeY() * world.sizeZ(), stats.getSeeded());
+        assertTrue(stats.getDequeued() > 0);
+        assertTrue(stats.getRequeued() <= stats.getDequeued());
+        // the 8 cubes of the world and unloaded ones around them that light tried to reach
+        assertTrue(stats.getCubesTouched() >= 8);
+        assertTrue(stats.getWorldLookups() >= stats.getCubesTouched());
+
+        propagator.update(5, 5, 5, EnumSet.of(LightType.BLOCK));
+        assertEquals(2, reported.size());
+        assertEquals(1, reported.get(1).getSeeded());
+        assertTrue(reported.get(1).getDequeued() < stats.getDequeued());
+
+        propagator.setStatsListener(null);
+        propagator.update(5, 5, 5, EnumSet.of(LightType.BLOCK));
+        assertEquals(2, reported.size());
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        BoxWorldAccessTestImpl world = randomWorld(new Random(42));
+        RuntimeException error = new RuntimeException("test");
+        AtomicBoolean failing = new AtomicBoolean(true);
+        ParallelLightPropagator propagator = new ParallelLightPropagator(world, (x, y, z, value, type) -> {
+            if (failing.get() && x == 20 && y == 20 && z == 20) {
+                throw error;
+            }
+            world.setLight(x, y, z, value, type);
+        }, executor);
+        try {
+            lightEverything(world, propagator);
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(error, e);
+        }
+        // the same propagator is still usable afterwards, and fixes the partially updated world
+        failing.set(false);
+        lightEverything(world, propagator);
+        world.verifyLight();
+    }
+}
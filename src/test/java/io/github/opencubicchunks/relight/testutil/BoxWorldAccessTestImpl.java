@@ -0,0 +1,352 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.testutil;
+
+import static org.junit.Assert.assertEquals;
+
+import io.github.opencubicchunks.relight.heightmap.ColumnHeights;
+import io.github.opencubicchunks.relight.heightmap.HeightMap;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.ColumnPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.world.LightChunk;
+import io.github.opencubicchunks.relight.world.LightDataReader;
+import io.github.opencubicchunks.relight.world.LightDataWriter;
+import io.github.opencubicchunks.relight.world.WorldAccess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An array backed test implementation of WorldAccess. All chunks in a box starting at chunk (0, 0, 0) exist, everything else is not
+ * loaded. Chunks inside the box can be unloaded, they are then ignored by the heightmap (after {@link #updateHeightMaps()}).
+ * Can compute the expected light values from scratch to verify propagators.
+ */
+public class BoxWorldAccessTestImpl implements WorldAccess, LightDataWriter, LightDataReader {
+
+    private final int sizeX, sizeY, sizeZ;
+
+    private final boolean[] unloadedChunks;
+    private final boolean[] opaque;
+    private final int[] blockSources;
+    private final int[] skyLight;
+    private final int[] blockLight;
+    private final ColumnHeights[] heightMaps;
+
+    public BoxWorldAccessTestImpl(int chunksX, int chunksY, int chunksZ) {
+        this.sizeX = chunksX << 4;
+        this.sizeY = chunksY << 4;
+        this.sizeZ = chunksZ << 4;
+        int volume = sizeX * sizeY * sizeZ;
+        this.opaque = new boolean[volume];
+        this.blockSources = new int[volume];
+        this.skyLight = new int[volume];
+        this.blockLight = new int[volume];
+        this.unloadedChunks = new boolean[chunksX * chunksY * chunksZ];
+        this.heightMaps = new ColumnHeights[chunksX * chunksZ];
+        for (int i = 0; i < heightMaps.length; i++) {
+            heightMaps[i] = new ColumnHeights();
+        }
+    }
+
+    public int sizeX() {
+        return sizeX;
+    }
+
+    public int sizeY() {
+        return sizeY;
+    }
+
+    public int sizeZ() {
+        return sizeZ;
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < sizeX && y < sizeY && z < sizeZ;
+    }
+
+    private int index(int x, int y, int z) {
+        if (!contains(x, y, z)) {
+            throw new IllegalArgumentException("Chunk for block " + x + ", " + y + ", " + z + " is not loaded!");
+        }
+        return (x * sizeY + y) * sizeZ + z;
+    }
+
+    /**
+     * Sets opacity of a block and updates the heightmap. Light values are not changed.
+     */
+    public void setOpaque(int x, int y, int z, boolean isOpaque) {
+        opaque[index(x, y, z)] = isOpaque;
+        updateHeight(x, z);
+    }
+
+    private void updateHeight(int x, int z) {
+        ColumnHeights heights = heightMaps[(x >> 4) * (sizeZ >> 4) + (z >> 4)];
+        int top = Integer.MIN_VALUE;
+        for (int by = sizeY - 1; by >= 0; by--) {
+            if (opaque[index(x, by, z)] && isChunkLoaded(x >> 4, by >> 4, z >> 4)) {
+                top = by;
+                break;
+            }
+        }
+        heights.setHeight(x & 0xF, z & 0xF, top);
+    }
+
+    /**
+     * Sets whether a chunk inside the box is loaded. Heightmaps are not updated until {@link #updateHeightMaps()} is called.
+     */
+    public void setChunkLoaded(int chunkX, int chunkY, int chunkZ, boolean loaded) {
+        if (!contains(chunkX << 4, chunkY << 4, chunkZ << 4)) {
+            throw new IllegalArgumentException("Chunk " + chunkX + ", " + chunkY + ", " + chunkZ + " is outside of the world");
+        }
+        unloadedChunks[(chunkX * (sizeY >> 4) + chunkY) * (sizeZ >> 4) + chunkZ] = !loaded;
+    }
+
+    public void updateHeightMaps() {
+        for (int x = 0; x < sizeX; x++) {
+            for (int z = 0; z < sizeZ; z++) {
+                updateHeight(x, z);
+            }
+        }
+    }
+
+    public boolean isOpaque(int x, int y, int z) {
+        return opaque[index(x, y, z)];
+    }
+
+    /**
+     * Sets block light source value of a block. Light values are not changed.
+     */
+    public void setBlockSource(int x, int y, int z, int value) {
+        blockSources[index(x, y, z)] = value;
+    }
+
+    public int getTopY(int x, int z) {
+        return heightMaps[(x >> 4) * (sizeZ >> 4) + (z >> 4)].getTopY(x & 0xF, z & 0xF);
+    }
+
+    /**
+     * Computes light values from scratch by repeatedly relaxing all blocks until nothing changes.
+     */
+    public int[] computeExpectedLight(LightType type) {
+        int[] light = new int[opaque.length];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int x = 0; x < sizeX; x++) {
+                for (int y = 0; y < sizeY; y++) {
+                    for (int z = 0; z < sizeZ; z++) {
+                        int value = getLightSource(x, y, z, type);
+                        int opacity = Math.max(1, isOpaque(x, y, z) ? 15 : 0);
+                        value = Math.max(value, neighborLight(light, x - 1, y, z) - opacity);
+                        value = Math.max(value, neighborLight(light, x + 1, y, z) - opacity);
+                        value = Math.max(value, neighborLight(light, x, y - 1, z) - opacity);
+                        value = Math.max(value, neighborLight(light, x, y + 1, z) - opacity);
+                        value = Math.max(value, neighborLight(light, x, y, z - 1) - opacity);
+                        value = Math.max(value, neighborLight(light, x, y, z + 1) - opacity);
+                        int idx = index(x, y, z);
+                        if (value != light[idx]) {
+                            light[idx] = value;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return light;
+    }
+
+    private int neighborLight(int[] light, int x, int y, int z) {
+        return contains(x, y, z) ? light[index(x, y, z)] : 0;
+    }
+
+    public void verifyLight() {
+        verifyLight(LightType.SKY);
+        verifyLight(LightType.BLOCK);
+    }
+
+    public void verifyLight(LightType type) {
+        int[] expected = computeExpectedLight(type);
+        for (int x = 0; x < sizeX; x++) {
+            for (int y = 0; y < sizeY; y++) {
+                for (int z = 0; z < sizeZ; z++) {
+                    assertEquals(type + " light at " + x + ", " + y + ", " + z, expected[index(x, y, z)], getLight(x, y, z, type));
+                }
+            }
+        }
+    }
+
+    @Override public int getLight(int x, int y, int z, LightType type) {
+        return (type == LightType.SKY ? skyLight : blockLight)[index(x, y, z)];
+    }
+
+    @Override public int getLightSource(int x, int y, int z, LightType type) {
+        if (type == LightType.BLOCK) {
+            return blockSources[index(x, y, z)];
+        }
+        index(x, y, z);
+        return y > getTopY(x, z) ? 15 : 0;
+    }
+
+    @Override public void setLight(int x, int y, int z, int value, LightType type) {
+        (type == LightType.SKY ? skyLight : blockLight)[index(x, y, z)] = value;
+    }
+
+    @Override public LightDataReader getLightChunk(ChunkPos minPos, ChunkPos maxPos) {
+        return this;
+    }
+
+    @Override public LightDataWriter getWriterFor(ChunkPos minPos, ChunkPos maxPos) {
+        return this;
+    }
+
+    @Override public HeightMap getHeightMap(ColumnPos pos) {
+        return getHeightMap(pos.getX(), pos.getZ());
+    }
+
+    @Override public HeightMap getHeightMap(int columnX, int columnZ) {
+        if (columnX < 0 || columnZ < 0 || columnX >= sizeX >> 4 || columnZ >= sizeZ >> 4) {
+            throw new IllegalArgumentException("Column at " + columnX + ", " + columnZ + " is not loaded!");
+        }
+        return heightMaps[columnX * (sizeZ >> 4) + columnZ];
+    }
+
+    @Override public boolean isChunkLoaded(int chunkX, int chunkY, int chunkZ) {
+        return contains(chunkX << 4, chunkY << 4, chunkZ << 4)
+            && !unloadedChunks[(chunkX * (sizeY >> 4) + chunkY) * (sizeZ >> 4) + chunkZ];
+    }
+
+    @Override public LightChunk getLightChunk(ChunkPos pos) {
+        if (!isChunkLoaded(pos)) {
+            throw new IllegalArgumentException("Chunk at " + pos + " is not loaded!");
+        }
+        return new LightChunkTestImpl(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    @Override public LightChunk getLightChunkIfLoaded(int chunkX, int chunkY, int chunkZ) {
+        return isChunkLoaded(chunkX, chunkY, chunkZ) ? new LightChunkTestImpl(chunkX, chunkY, chunkZ) : null;
+    }
+
+    @Override public List<LightChunk> chunksBetween(ColumnPos pos, int start, int end) {
+        List<LightChunk> chunks = new ArrayList<>();
+        for (int y = Math.min(end, (sizeY >> 4) - 1); y >= Math.max(start, 0); y--) {
+            if (isChunkLoaded(pos.getX(), y, pos.getZ())) {
+                chunks.add(getLightChunk(new ChunkPos(pos.getX(), y, pos.getZ())));
+            }
+        }
+        return chunks;
+    }
+
+    private class LightChunkTestImpl implements LightChunk {
+
+        private final int xOrigin, yOrigin, zOrigin;
+
+        LightChunkTestImpl(int x, int y, int z) {
+            this.xOrigin = x << 4;
+            this.yOrigin = y << 4;
+            this.zOrigin = z << 4;
+        }
+
+        private int worldX(int x) {
+            return (x & 0xF) + xOrigin;
+        }
+
+        private int worldY(int y) {
+            return (y & 0xF) + yOrigin;
+        }
+
+        private int worldZ(int z) {
+            return (z & 0xF) + zOrigin;
+        }
+
+        @Override public int getLight(int x, int y, int z, LightType type) {
+            return BoxWorldAccessTestImpl.this.getLight(worldX(x), worldY(y), worldZ(z), type);
+        }
+
+        @Override public int getLightSource(int x, int y, int z, LightType type) {
+            return BoxWorldAccessTestImpl.this.getLightSource(worldX(x), worldY(y), worldZ(z), type);
+        }
+
+        @Override public int getOpacityBetween(int fromX, int fromY, int fromZ, int toX, int toY, int toZ) {
+            return getOpacity(toX, toY, toZ);
+        }
+
+        @Override public int getOpacity(int x, int y, int z) {
+            return isOpaque(worldX(x), worldY(y), worldZ(z)) ? 15 : 0;
+        }
+
+        @Override public boolean getOpacityMask(long[] mask) {
+            for (int i = 0; i < 4096; i++) {
+                long bit = 1L << i;
+                if (isOpaque(xOrigin + (i & 0xF), yOrigin + (i >> 8), zOrigin + (i >> 4 & 0xF))) {
+                    mask[i >> 6] |= bit;
+                } else {
+                    mask[i >> 6] &= ~bit;
+                }
+            }
+            return true;
+        }
+
+        @Override public int getUniformOpacity() {
+            int opacity = getOpacity(0, 0, 0);
+            for (int i = 1; i < 4096; i++) {
+                if (getOpacity(i & 0xF, i >> 8, i >> 4 & 0xF) != opacity) {
+                    return -1;
+                }
+            }
+            return opacity;
+        }
+
+        @Override public int getUniformLightSource(LightType type) {
+            int source = getLightSource(0, 0, 0, type);
+            for (int i = 1; i < 4096; i++) {
+                if (getLightSource(i & 0xF, i >> 8, i >> 4 & 0xF, type) != source) {
+                    return -1;
+                }
+            }
+            return source;
+        }
+
+        @Override public boolean isLightUniform(LightType type, int value) {
+            for (int i = 0; i < 4096; i++) {
+                if (getLight(i & 0xF, i >> 8, i >> 4 & 0xF, type) != value) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override public int getX() {
+            return xOrigin >> 4;
+        }
+
+        @Override public int getY() {
+            return yOrigin >> 4;
+        }
+
+        @Override public int getZ() {
+            return zOrigin >> 4;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.testutil;
+
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Worlds and seeds shared by propagator and handler tests.
+ */
+public final class LightTestUtil {
+
+    private LightTestUtil() {
+    }
+
+    /**
+     * Creates a 2x2x2 chunk world with a rough, porous surface below y = 20 and some random light sources. Light is not computed.
+     */
+    public static BoxWorldAccessTestImpl randomWorld(Random rand) {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                int surface = 12 + rand.nextInt(8);
+                for (int y = 0; y <= surface; y++) {
+                    if (rand.nextInt(8) != 0) {
+                        world.setOpaque(x, y, z, true);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 40; i++) {
+            world.setBlockSource(rand.nextInt(world.sizeX()), rand.nextInt(world.sizeY()), rand.nextInt(world.sizeZ()), 1 + rand.nextInt(15));
+        }
+        return world;
+    }
+
+    /**
+     * Creates a 3x3x3 chunk world with a porous surface between y = 15 and y = 15 + surfaceRange, and the given number of random light
+     * sources. Light is computed and verified.
+     */
+    public static BoxWorldAccessTestImpl litWorld(Random rand, int surfaceRange, int sources) {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 3, 3);
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int z = 0; z < world.sizeZ(); z++) {
+                int surface = 15 + rand.nextInt(surfaceRange);
+                for (int y = 0; y <= surface; y++) {
+                    if (rand.nextInt(4) != 0) {
+                        world.setOpaque(x, y, z, true);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < sources; i++) {
+            world.setBlockSource(rand.nextInt(world.sizeX()), rand.nextInt(world.sizeY()), rand.nextInt(world.sizeZ()), 1 + rand.nextInt(15));
+        }
+        lightEverything(world);
+        world.verifyLight();
+        return world;
+    }
+
+    /**
+     * Updates both light types of every block in the world with a new {@link MinecraftChunkAwareLightPropagator}.
+     */
+    public static void lightEverything(BoxWorldAccessTestImpl world) {
+        lightEverything(world, new MinecraftChunkAwareLightPropagator(world, world));
+    }
+
+    /**
+     * Updates both light types of every block in the world with the given propagator.
+     */
+    public static void lightEverything(BoxWorldAccessTestImpl world, LightPropagator propagator) {
+        propagator.update(allBlocks(world), EnumSet.allOf(LightType.class));
+    }
+
+    public static Vec3List allBlocks(BoxWorldAccessTestImpl world) {
+        Vec3List all = new Vec3List(world.sizeX() * world.sizeY() * world.sizeZ());
+        for (int x = 0; x < world.sizeX(); x++) {
+            for (int y = 0; y < world.sizeY(); y++) {
+                for (int z = 0; z < world.sizeZ(); z++) {
+                    all.add(x, y, z);
+                }
+            }
+        }
+        return all;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.trace;
+
+import static io.github.opencubicchunks.relight.testutil.LightTestUtil.lightEverything;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.handler.FirstLightHandler;
+import io.github.opencubicchunks.relight.propagator.LightPropagator;
+import io.github.opencubicchunks.relight.propagator.MinecraftChunkAwareLightPropagator;
+import io.github.opencubicchunks.relight.propagator.NoopLightPropagator;
+import io.github.opencubicchunks.relight.propagator.ParallelLightPropagator;
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class LightTraceTest {
+
+    @Test
+    public void testReplayMatchesRecording() throws IOException {
+        byte[] trace = recordUpdates(true);
+
+        LightTraceReplay.Report report = new LightTraceReplay(MinecraftChunkAwareLightPropagator::new).replay(input(trace));
+        assertEquals(3, report.getCalls());
+        assertEquals(0, report.getMismatchedCalls());
+        assertEquals(0, report.getMismatchedBlocks());
+        assertFalse(report.isTruncated());
+        assertTrue(report.getMaxNanos() <= report.getTotalNanos());
+
+        report = new LightTraceReplay((world, writer) -> new ParallelLightPropagator(world, writer, ForkJoinPool.commonPool()))
+            .replay(input(trace));
+        assertEquals(3, report.getCalls());
+        assertEquals(0, report.getMismatchedCalls());
+    }
+
+    @Test
+    public void testReplayDetectsWrongLight() throws IOException {
+        byte[] trace = recordUpdates(true);
+
+        LightTraceReplay.Report report = new LightTraceReplay(
+            (world, writer) -> new NoopLightPropagator(world.getLightChunk(null, null), writer)).replay(input(trace));
+        assertEquals(3, report.getCalls());
+        assertTrue(report.getMismatchedCalls() > 0);
+        assertTrue(report.getMismatchedBlocks() > 0);
+    }
+
+    @Test
+    public void testTruncatedTrace() throws IOException {
+        byte[] trace = recordUpdates(false);
+        // cut off in the middle of the last call
+        byte[] truncated = Arrays.copyOf(trace, trace.length - 10);
+
+        LightTraceReplay.Report report = new LightTraceReplay(MinecraftChunkAwareLightPropagator::new).replay(input(truncated));
+        assertEquals(2, report.getCalls());
+        assertEquals(0, report.getMismatchedCalls());
+        assertTrue(report.isTruncated());
+    }
+
+    @Test
+    public void testFirstLightReplay() throws IOException {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        world.setOpaque(5, 20, 5, true);
+        world.setOpaque(20, 3, 9, true);
+        world.setBlockSource(24, 8, 8, 12);
+        List<ChunkPos> newChunks = Arrays.asList(new ChunkPos(0, 1, 0), new ChunkPos(1, 0, 0));
+        // the heightmap doesn't know about the new chunks yet
+        for (ChunkPos pos : newChunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), false);
+        }
+        world.updateHeightMaps();
+        for (ChunkPos pos : newChunks) {
+            world.setChunkLoaded(pos.getX(), pos.getY(), pos.getZ(), true);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LightTraceRecorder recorder = new LightTraceRecorder(world, new DataOutputStream(bytes));
+        FirstLightHandler.SeedMode seedMode = FirstLightHandler.SeedMode.SOURCES_AND_EDGES;
+        FirstLightHandler handler = new FirstLightHandler(recorder.getWorld(), seedMode);
+        Vec3List sky = new Vec3List(16);
+        Vec3List block = new Vec3List(16);
+        recorder.applyFirstLight(handler, seedMode, newChunks, sky, block);
+        recorder.finish();
+        assertTrue(block.size() > 0);
+
+        LightTraceReplay.Report report = new LightTraceReplay(MinecraftChunkAwareLightPropagator::new).replay(input(bytes.toByteArray()));
+        assertEquals(1, report.getCalls());
+        assertEquals(0, report.getMismatchedCalls());
+        assertEquals(0, report.getMismatchedOutputs());
+    }
+
+    private static byte[] recordUpdates(boolean finish) throws IOException {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 2, 3);
+        world.setOpaque(20, 10, 20, true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LightTraceRecorder recorder = new LightTraceRecorder(world, new DataOutputStream(bytes));
+        LightPropagator propagator = recorder.wrap(
+            new MinecraftChunkAwareLightPropagator(recorder.getWorld(), recorder.wrap(world)));
+
+        lightEverything(world, propagator);
+
+        // below an opaque block, so sky light sources don't change
+        world.setOpaque(20, 5, 20, true);
+        propagator.update(20, 5, 20, EnumSet.allOf(LightType.class));
+        world.setBlockSource(5, 5, 5, 14);
+        propagator.update(5, 5, 5, EnumSet.of(LightType.BLOCK));
+        world.verifyLight();
+        if (finish) {
+            recorder.finish();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] trace) {
+        return new DataInputStream(new ByteArrayInputStream(trace));
+    }
+}
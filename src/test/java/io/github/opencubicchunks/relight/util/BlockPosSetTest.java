@@ -0,0 +1,137 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class BlockPosSetTest {
+
+    @Test
+    public void testAddAndContains() {
+        BlockPosSet set = new BlockPosSet();
+        assertTrue(set.add(1, 2, 3));
+        assertFalse(set.add(1, 2, 3));
+        assertTrue(set.add(-1, 2, 3));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(1, 2, 3));
+        assertTrue(set.contains(-1, 2, 3));
+        assertFalse(set.contains(1, 2, 4));
+        assertFalse(set.contains(100, 2, 3));
+    }
+
+    @Test
+    public void testIterationOrder() {
+        BlockPosSet set = new BlockPosSet();
+        set.add(20, 0, 0);
+        set.add(1, 1, 0);
+        set.add(17, 0, 0);
+        set.add(1, 0, 1);
+        set.add(16, 0, 0);
+        set.add(0, 0, 0);
+        // cubes in the order they were first added to, positions by index inside the cube
+        assertEquals(Arrays.asList("16,0,0", "17,0,0", "20,0,0", "0,0,0", "1,0,1", "1,1,0"), toStrings(set));
+    }
+
+    @Test
+    public void testAddCube() {
+        BlockPosSet set = new BlockPosSet();
+        set.add(-5, 3, 7);
+        set.addCube(-1, 0, 0);
+        assertEquals(4096, set.size());
+        assertFalse(set.add(-16, 15, 15));
+        assertTrue(set.add(0, 0, 0));
+        assertEquals(4097, set.size());
+    }
+
+    @Test
+    public void testAddAll() {
+        BlockPosSet a = new BlockPosSet();
+        a.add(1, 1, 1);
+        a.add(2, 2, 2);
+        BlockPosSet b = new BlockPosSet();
+        b.add(40, 0, 0);
+        b.add(2, 2, 2);
+        b.add(3, 3, 3);
+        a.addAll(b);
+        assertEquals(4, a.size());
+        assertEquals(3, b.size());
+        assertEquals(Arrays.asList("1,1,1", "2,2,2", "3,3,3", "40,0,0"), toStrings(a));
+    }
+
+    @Test
+    public void testClearAndDrain() {
+        BlockPosSet set = new BlockPosSet();
+        set.add(5, 5, 5);
+        set.add(50, 5, 5);
+        Vec3List list = new Vec3List(1);
+        set.drainTo(list);
+        assertEquals(2, list.size());
+        assertEquals(0, set.size());
+        assertFalse(set.contains(5, 5, 5));
+
+        set.add(50, 5, 5);
+        set.clear();
+        assertEquals(0, set.size());
+        set.add(7, 7, 7);
+        assertEquals(Arrays.asList("7,7,7"), toStrings(set));
+    }
+
+    @Test
+    public void testManyCubes() {
+        Random rand = new Random(42);
+        BlockPosSet set = new BlockPosSet();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            int x = rand.nextInt(2000) - 1000;
+            int y = rand.nextInt(2000) - 1000;
+            int z = rand.nextInt(2000) - 1000;
+            assertEquals(expected.add(x + "," + y + "," + z), set.add(x, y, z));
+        }
+        assertEquals(expected.size(), set.size());
+        List<String> iterated = toStrings(set);
+        assertEquals(expected.size(), iterated.size());
+        assertEquals(expected, new HashSet<>(iterated));
+        for (String pos : expected) {
+            String[] parts = pos.split(",");
+            assertTrue(set.contains(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+        }
+    }
+
+    private static List<String> toStrings(BlockPosSet set) {
+        List<String> list = new ArrayList<>();
+        set.forEach((x, y, z) -> list.add(x + "," + y + "," + z));
+        return list;
+    }
+}
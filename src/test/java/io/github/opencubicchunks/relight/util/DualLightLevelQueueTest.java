@@ -0,0 +1,94 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DualLightLevelQueueTest {
+
+    @Test
+    public void testEmpty() {
+        DualLightLevelQueue obj = new DualLightLevelQueue(1);
+        assertFalse(obj.next());
+    }
+
+    @Test
+    public void testHigherLevelFirst() {
+        DualLightLevelQueue obj = new DualLightLevelQueue(1);
+        obj.add(PosUtil.packPos(0, 0, 0), 3, 0);
+        obj.add(PosUtil.packPos(1, 0, 0), 2, 14);
+        obj.add(PosUtil.packPos(2, 0, 0), 15, 15);
+        obj.add(PosUtil.packPos(3, 0, 0), 0, 3);
+
+        assertTrue(obj.next());
+        assertEquals(2, PosUtil.unpackX(obj.getPos()));
+        assertEquals(15, obj.getSkyLevel());
+        assertEquals(15, obj.getBlockLevel());
+        assertTrue(obj.next());
+        assertEquals(1, PosUtil.unpackX(obj.getPos()));
+        assertEquals(2, obj.getLevel(LightType.SKY));
+        assertEquals(14, obj.getLevel(LightType.BLOCK));
+
+        // added while draining
+        obj.add(PosUtil.packPos(4, 5, 6), 7, 1);
+
+        assertTrue(obj.next());
+        assertEquals(PosUtil.packPos(4, 5, 6), obj.getPos());
+        assertEquals(7, obj.getSkyLevel());
+        assertEquals(1, obj.getBlockLevel());
+        assertTrue(obj.next());
+        assertEquals(0, PosUtil.unpackX(obj.getPos()));
+        assertEquals(3, obj.getSkyLevel());
+        assertEquals(0, obj.getBlockLevel());
+        assertTrue(obj.next());
+        assertEquals(3, PosUtil.unpackX(obj.getPos()));
+        assertEquals(0, obj.getSkyLevel());
+        assertEquals(3, obj.getBlockLevel());
+        assertFalse(obj.next());
+    }
+
+    @Test
+    public void testGrowAndReuse() {
+        DualLightLevelQueue obj = new DualLightLevelQueue(1);
+        for (int i = 0; i < 10; i++) {
+            obj.add(PosUtil.packPos(i, i, i), i, 9 - i);
+        }
+        int count = 0;
+        while (obj.next()) {
+            int x = PosUtil.unpackX(obj.getPos());
+            assertEquals(x, obj.getSkyLevel());
+            assertEquals(9 - x, obj.getBlockLevel());
+            count++;
+        }
+        assertEquals(10, count);
+        obj.add(PosUtil.packPos(7, 8, 9), 1, 0);
+        assertTrue(obj.next());
+        assertEquals(PosUtil.packPos(7, 8, 9), obj.getPos());
+        assertFalse(obj.next());
+    }
+}
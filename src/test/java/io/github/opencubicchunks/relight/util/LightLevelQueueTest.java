@@ -0,0 +1,101 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LightLevelQueueTest {
+
+    @Test
+    public void testEmpty() {
+        LightLevelQueue obj = new LightLevelQueue(1);
+        assertTrue(obj.isEmpty());
+        assertFalse(obj.next());
+    }
+
+    @Test
+    public void testSingle() {
+        LightLevelQueue obj = new LightLevelQueue(1);
+        obj.add(1, 2, 3, 4);
+        assertFalse(obj.isEmpty());
+        assertTrue(obj.next());
+        assertEquals(1, obj.getX());
+        assertEquals(2, obj.getY());
+        assertEquals(3, obj.getZ());
+        assertEquals(4, obj.getLevel());
+        assertFalse(obj.next());
+    }
+
+    @Test
+    public void testHighestLevelFirst() {
+        LightLevelQueue obj = new LightLevelQueue(1);
+        obj.add(0, 0, 0, 3);
+        obj.add(1, 0, 0, 15);
+        obj.add(2, 0, 0, 0);
+        obj.add(3, 0, 0, 15);
+
+        assertTrue(obj.next());
+        assertEquals(1, obj.getX());
+        assertEquals(15, obj.getLevel());
+        assertTrue(obj.next());
+        assertEquals(3, obj.getX());
+        assertEquals(15, obj.getLevel());
+
+        // added while draining
+        obj.add(4, 0, 0, 7);
+
+        assertTrue(obj.next());
+        assertEquals(4, obj.getX());
+        assertEquals(7, obj.getLevel());
+        assertTrue(obj.next());
+        assertEquals(0, obj.getX());
+        assertEquals(3, obj.getLevel());
+        assertTrue(obj.next());
+        assertEquals(2, obj.getX());
+        assertEquals(0, obj.getLevel());
+        assertFalse(obj.next());
+    }
+
+    @Test
+    public void testReuseAfterDrain() {
+        LightLevelQueue obj = new LightLevelQueue(1);
+        for (int i = 0; i < 10; i++) {
+            obj.add(i, i, i, 5);
+        }
+        while (obj.next()) {
+        }
+        assertTrue(obj.isEmpty());
+        obj.add(7, 8, 9, 1);
+        assertTrue(obj.next());
+        assertEquals(7, obj.getX());
+        assertEquals(8, obj.getY());
+        assertEquals(9, obj.getZ());
+        assertEquals(1, obj.getLevel());
+        assertFalse(obj.next());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PosUtilTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random rand = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            int x = rand.nextInt(60_000_000) - 30_000_000;
+            int y = PosUtil.MIN_Y + rand.nextInt(PosUtil.MAX_Y - PosUtil.MIN_Y + 1);
+            int z = rand.nextInt(60_000_000) - 30_000_000;
+            long packed = PosUtil.packPos(x, y, z);
+            assertEquals(x, PosUtil.unpackX(packed));
+            assertEquals(y, PosUtil.unpackY(packed));
+            assertEquals(z, PosUtil.unpackZ(packed));
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        int[] values = {-(1 << 25), (1 << 25) - 1, -1, 0, 1};
+        int[] yValues = {PosUtil.MIN_Y, PosUtil.MAX_Y, -1, 0, 1};
+        for (int x : values) {
+            for (int y : yValues) {
+                for (int z : values) {
+                    long packed = PosUtil.packPos(x, y, z);
+                    assertEquals(x, PosUtil.unpackX(packed));
+                    assertEquals(y, PosUtil.unpackY(packed));
+                    assertEquals(z, PosUtil.unpackZ(packed));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class Vec3IndexMapTest {
+
+    @Test
+    public void testInsertionOrder() {
+        Vec3IndexMap map = new Vec3IndexMap();
+        assertEquals(0, map.add(5, -3, 7));
+        assertEquals(1, map.add(-5, 3, 7));
+        assertEquals(0, map.add(5, -3, 7));
+        assertEquals(2, map.size());
+        assertEquals(-5, map.getX(1));
+        assertEquals(3, map.getY(1));
+        assertEquals(7, map.getZ(1));
+        assertEquals(1, map.indexOf(-5, 3, 7));
+        assertEquals(Vec3IndexMap.NO_ENTRY, map.indexOf(5, 3, 7));
+    }
+
+    @Test
+    public void testGrowAndClear() {
+        Vec3IndexMap map = new Vec3IndexMap();
+        for (int round = 0; round < 2; round++) {
+            Random rand = new Random(42);
+            for (int i = 0; i < 1000; i++) {
+                // distinct positions, with coordinates far apart and negative
+                int x = i * 1_000_003 - 500_000_000;
+                assertEquals(i, map.add(x, rand.nextInt(), -i));
+            }
+            assertEquals(1000, map.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, map.indexOf(map.getX(i), map.getY(i), map.getZ(i)));
+                assertEquals(-i, map.getZ(i));
+            }
+            map.clear();
+            assertEquals(0, map.size());
+            assertEquals(Vec3IndexMap.NO_ENTRY, map.indexOf(-500_000_000, 0, 0));
+        }
+    }
+}
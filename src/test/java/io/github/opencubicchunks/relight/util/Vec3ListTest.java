@@ -29,6 +29,10 @@ import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class Vec3ListTest {
 
     @Test
@@ -47,4 +51,93 @@ public class Vec3ListTest {
         assertEquals(3, obj.getZ());
         assertFalse(obj.next());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetByIndex() {
+        Vec3List obj = new Vec3List(1);
+        for (int i = 0; i < 5; i++) {
+            obj.add(i, -i, i * 2);
+        }
+        // reading doesn't affect access by index
+        assertTrue(obj.next());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, obj.getX(i));
+            assertEquals(-i, obj.getY(i));
+            assertEquals(i * 2, obj.getZ(i));
+        }
+        assertEquals(0, obj.getX());
+    }
+
+    @Test
+    public void testClearAndRewind() {
+        Vec3List obj = new Vec3List(1);
+        obj.add(1, 2, 3);
+        obj.add(4, 5, 6);
+        assertTrue(obj.next());
+        assertTrue(obj.next());
+        obj.rewind();
+        assertTrue(obj.next());
+        assertEquals(1, obj.getX());
+        assertEquals(2, obj.size());
+
+        obj.clear();
+        assertEquals(0, obj.size());
+        obj.add(7, 8, 9);
+        assertTrue(obj.next());
+        assertEquals(7, obj.getX());
+        assertFalse(obj.next());
+    }
+
+    @Test
+    public void testAddAllAndForEach() {
+        Vec3List a = new Vec3List(1);
+        a.add(1, 2, 3);
+        Vec3List b = new Vec3List(1);
+        for (int i = 0; i < 5; i++) {
+            b.add(i, -i, i * 2);
+        }
+        // partially read, addAll still copies everything
+        assertTrue(b.next());
+        a.addAll(b);
+        assertEquals(6, a.size());
+        assertEquals(5, b.size());
+
+        List<String> visited = new ArrayList<>();
+        a.forEach((x, y, z) -> visited.add(x + "," + y + "," + z));
+        assertEquals(Arrays.asList("1,2,3", "0,0,0", "1,-1,2", "2,-2,4", "3,-3,6", "4,-4,8"), visited);
+        // forEach doesn't move the read position
+        assertTrue(a.next());
+        assertEquals(1, a.getX());
+    }
+
+    @Test
+    public void testTrimToHighWaterMark() {
+        Vec3List obj = new Vec3List(4);
+        for (int i = 0; i < 1000; i++) {
+            obj.add(i, i, i);
+        }
+        assertTrue(obj.capacity() >= 1000);
+        obj.clear();
+        for (int use = 1; use < Vec3List.TRIM_INTERVAL; use++) {
+            for (int i = 0; i < 10; i++) {
+                obj.add(i, i, i);
+            }
+            obj.clear();
+        }
+        // the large use is still within the last interval
+        assertTrue(obj.capacity() >= 1000);
+
+        for (int use = 0; use < Vec3List.TRIM_INTERVAL; use++) {
+            for (int i = 0; i < 10; i++) {
+                obj.add(i, i, i);
+            }
+            obj.clear();
+        }
+        assertEquals(20, obj.capacity());
+
+        for (int use = 0; use < Vec3List.TRIM_INTERVAL; use++) {
+            obj.clear();
+        }
+        assertEquals(4, obj.capacity());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.world;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.testutil.BoxWorldAccessTestImpl;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.LightType;
+import org.junit.Test;
+
+public class LightRegionCacheTest {
+
+    @Test
+    public void testChunksResolvedOnce() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 3, 3);
+        LightRegionCache cache = new LightRegionCache(world);
+        cache.setRegion(new ChunkPos(1, 1, 1), 1);
+
+        LightChunk chunk = cache.getChunk(2, 0, 1);
+        assertNotNull(chunk);
+        assertEquals(2, chunk.getX());
+        assertEquals(0, chunk.getY());
+        assertEquals(1, chunk.getZ());
+        assertSame(chunk, cache.getChunk(2, 0, 1));
+        assertSame(chunk, cache.getChunkForBlock(47, 15, 16));
+    }
+
+    @Test
+    public void testUnloadedChunks() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        world.setChunkLoaded(1, 1, 1, false);
+        LightRegionCache cache = new LightRegionCache(world);
+        cache.setRegion(new ChunkPos(0, 0, 0), 1);
+
+        assertNull(cache.getChunk(1, 1, 1));
+        assertNull(cache.getChunk(-1, 0, 0));
+        assertNotNull(cache.getChunk(1, 1, 0));
+        assertEquals(LightType.SKY.defaultValue(), cache.getLight(16, 16, 16, LightType.SKY));
+        assertEquals(LightType.BLOCK.defaultValue(), cache.getLight(16, 16, 16, LightType.BLOCK));
+    }
+
+    @Test
+    public void testOutsideOfRegion() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(4, 1, 1);
+        LightRegionCache cache = new LightRegionCache(world);
+        cache.setRegion(0, 0, 0, 1, 0, 0);
+
+        assertTrue(cache.isInRegion(1, 0, 0));
+        assertFalse(cache.isInRegion(2, 0, 0));
+        assertNotNull(cache.getChunk(3, 0, 0));
+        assertEquals(3, cache.getChunk(3, 0, 0).getX());
+    }
+
+    @Test
+    public void testReadWrite() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 1, 1);
+        LightRegionCache cache = new LightRegionCache(world);
+        cache.setRegion(0, 0, 0, 1, 0, 0);
+
+        cache.setLight(20, 3, 5, 9, LightType.BLOCK);
+        assertEquals(9, world.getLight(20, 3, 5, LightType.BLOCK));
+        assertEquals(9, cache.getLight(20, 3, 5, LightType.BLOCK));
+
+        world.setBlockSource(3, 4, 5, 12);
+        assertEquals(12, cache.getLightSource(3, 4, 5, LightType.BLOCK));
+    }
+
+    @Test
+    public void testMovedRegion() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(3, 3, 3);
+        LightRegionCache cache = new LightRegionCache(world);
+        cache.setRegion(new ChunkPos(1, 1, 1), 1);
+        LightChunk chunk = cache.getChunk(0, 0, 0);
+
+        cache.setRegion(new ChunkPos(2, 2, 2), 0);
+        assertFalse(cache.isInRegion(0, 0, 0));
+        assertEquals(2, cache.getChunk(2, 2, 2).getX());
+        assertEquals(0, cache.getChunk(0, 0, 0).getX());
+        assertFalse(chunk == cache.getChunk(2, 2, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRegion() {
+        new LightRegionCache(new BoxWorldAccessTestImpl(1, 1, 1)).setRegion(1, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void testOneLookupPerChunk() {
+        BoxWorldAccessTestImpl world = new BoxWorldAccessTestImpl(2, 2, 2);
+        world.setChunkLoaded(1, 1, 1, false);
+        LightRegionCache cache = new LightRegionCache(world);
+        cache.setRegion(new ChunkPos(0, 0, 0), 1);
+
+        cache.getChunk(0, 0, 0);
+        cache.getChunk(1, 1, 1);
+        cache.getChunk(0, 0, 0);
+        cache.getChunk(1, 1, 1);
+        assertEquals(2, cache.getLookupCount());
+        assertEquals(2, cache.getResolvedCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteWithoutRegion() {
+        new LightRegionCache(new BoxWorldAccessTestImpl(1, 1, 1)).setLight(0, 0, 0, 15, LightType.BLOCK);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteAfterClear() {
+        LightRegionCache cache = new LightRegionCache(new BoxWorldAccessTestImpl(1, 1, 1));
+        cache.setRegion(0, 0, 0, 0, 0, 0);
+        cache.setLight(0, 0, 0, 15, LightType.BLOCK);
+        cache.clear();
+        cache.setLight(0, 0, 0, 14, LightType.BLOCK);
+    }
+}
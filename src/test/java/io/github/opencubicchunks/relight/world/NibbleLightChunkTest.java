@@ -0,0 +1,187 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.world;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.util.LightType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class NibbleLightChunkTest {
+
+    private static NibbleLightChunk newChunk() {
+        return new NibbleLightChunk(1, -2, 3) {
+            @Override public int getLightSource(int x, int y, int z, LightType type) {
+                return 0;
+            }
+
+            @Override public int getOpacityBetween(int fromX, int fromY, int fromZ, int toX, int toY, int toZ) {
+                return 0;
+            }
+
+            @Override public int getOpacity(int blockX, int blockY, int blockZ) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testNotAllocated() {
+        NibbleLightChunk chunk = newChunk();
+        assertNull(chunk.getLightArray(LightType.SKY));
+        assertEquals(LightType.SKY.defaultValue(), chunk.getLight(3, 4, 5, LightType.SKY));
+        chunk.setLight(3, 4, 5, LightType.SKY.defaultValue(), LightType.SKY);
+        assertNull(chunk.getLightArray(LightType.SKY));
+    }
+
+    @Test
+    public void testSetGet() {
+        NibbleLightChunk chunk = newChunk();
+        Random rand = new Random(42);
+        int[] expected = new int[4096];
+        for (int i = 0; i < 10000; i++) {
+            int x = rand.nextInt(16), y = rand.nextInt(16), z = rand.nextInt(16);
+            int value = rand.nextInt(16);
+            // world coordinates of the cube at (1, -2, 3)
+            chunk.setLight(x + 16, y - 32, z + 48, value, LightType.BLOCK);
+            expected[y << 8 | z << 4 | x] = value;
+        }
+        byte[] data = chunk.getLightArray(LightType.BLOCK);
+        for (int idx = 0; idx < 4096; idx++) {
+            int x = idx & 0xF, z = idx >> 4 & 0xF, y = idx >> 8;
+            assertEquals(expected[idx], chunk.getLight(x, y, z, LightType.BLOCK));
+            // Minecraft nibble array layout
+            assertEquals(expected[idx], (data[idx >> 1] >> ((idx & 1) * 4)) & 0xF);
+        }
+        assertNull(chunk.getLightArray(LightType.SKY));
+    }
+
+    @Test
+    public void testSharedCopyOnWrite() {
+        NibbleLightChunk a = newChunk();
+        NibbleLightChunk b = newChunk();
+        a.fill(LightType.SKY, 15);
+        b.fill(LightType.SKY, 15);
+        assertSame(a.getLightArray(LightType.SKY), b.getLightArray(LightType.SKY));
+
+        a.setLight(1, 2, 3, 7, LightType.SKY);
+        assertNotSame(a.getLightArray(LightType.SKY), b.getLightArray(LightType.SKY));
+        assertEquals(7, a.getLight(1, 2, 3, LightType.SKY));
+        assertEquals(15, a.getLight(0, 2, 3, LightType.SKY));
+        assertEquals(15, b.getLight(1, 2, 3, LightType.SKY));
+
+        NibbleLightChunk c = newChunk();
+        c.fill(LightType.SKY, 15);
+        assertEquals(15, c.getLight(1, 2, 3, LightType.SKY));
+    }
+
+    @Test
+    public void testFillChunk() {
+        NibbleLightChunk a = newChunk();
+        NibbleLightChunk b = newChunk();
+        a.fillChunk(1, -2, 3, 15, LightType.SKY);
+        b.fill(LightType.SKY, 15);
+        assertSame(a.getLightArray(LightType.SKY), b.getLightArray(LightType.SKY));
+        assertNull(a.getLightArray(LightType.BLOCK));
+    }
+
+    @Test
+    public void testCompact() {
+        NibbleLightChunk a = newChunk();
+        NibbleLightChunk b = newChunk();
+        b.fill(LightType.BLOCK, 0);
+        a.setLight(1, 2, 3, 7, LightType.BLOCK);
+        a.setLight(1, 2, 3, 0, LightType.BLOCK);
+        assertNotSame(a.getLightArray(LightType.BLOCK), b.getLightArray(LightType.BLOCK));
+        a.compact();
+        assertSame(a.getLightArray(LightType.BLOCK), b.getLightArray(LightType.BLOCK));
+    }
+
+    @Test
+    public void testFillOther() {
+        NibbleLightChunk chunk = newChunk();
+        chunk.fill(LightType.BLOCK, 9);
+        assertEquals(9, chunk.getLight(15, 15, 15, LightType.BLOCK));
+        chunk.setLight(15, 15, 15, 3, LightType.BLOCK);
+        assertEquals(3, chunk.getLight(15, 15, 15, LightType.BLOCK));
+        assertEquals(9, chunk.getLight(14, 15, 15, LightType.BLOCK));
+    }
+
+    @Test
+    public void testSetLightArray() {
+        NibbleLightChunk a = newChunk();
+        NibbleLightChunk b = newChunk();
+        a.fill(LightType.SKY, 15);
+        byte[] loaded = new byte[NibbleLightChunk.ARRAY_SIZE];
+        Arrays.fill(loaded, (byte) 0xFF);
+        b.setLightArray(LightType.SKY, loaded);
+        assertSame(a.getLightArray(LightType.SKY), b.getLightArray(LightType.SKY));
+
+        loaded = new byte[NibbleLightChunk.ARRAY_SIZE];
+        loaded[5] = 0x21;
+        b.setLightArray(LightType.SKY, loaded);
+        assertSame(loaded, b.getLightArray(LightType.SKY));
+        assertEquals(1, b.getLight(10, 0, 0, LightType.SKY));
+        assertEquals(2, b.getLight(11, 0, 0, LightType.SKY));
+
+        b.setLightArray(LightType.SKY, null);
+        assertNull(b.getLightArray(LightType.SKY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetLightArrayWrongSize() {
+        newChunk().setLightArray(LightType.SKY, new byte[16]);
+    }
+
+    @Test
+    public void testIsLightUniform() {
+        NibbleLightChunk chunk = newChunk();
+        assertTrue(chunk.isLightUniform(LightType.SKY, LightType.SKY.defaultValue()));
+        chunk.fill(LightType.SKY, 15);
+        assertTrue(chunk.isLightUniform(LightType.SKY, 15));
+        assertFalse(chunk.isLightUniform(LightType.SKY, 0));
+        chunk.fill(LightType.BLOCK, 7);
+        assertTrue(chunk.isLightUniform(LightType.BLOCK, 7));
+        chunk.setLight(16, -32, 48, 6, LightType.BLOCK);
+        assertFalse(chunk.isLightUniform(LightType.BLOCK, 7));
+        chunk.setLight(16, -32, 48, 7, LightType.BLOCK);
+        assertTrue(chunk.isLightUniform(LightType.BLOCK, 7));
+    }
+
+    @Test
+    public void testPosition() {
+        NibbleLightChunk chunk = newChunk();
+        assertEquals(1, chunk.getX());
+        assertEquals(-2, chunk.getY());
+        assertEquals(3, chunk.getZ());
+    }
+}
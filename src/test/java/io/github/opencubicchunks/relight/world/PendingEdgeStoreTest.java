@@ -0,0 +1,146 @@
+/*
+ *  This file is part of ReLight, licensed under the MIT License (MIT).
+ *
+ *  Copyright (c) contributors
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package io.github.opencubicchunks.relight.world;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.github.opencubicchunks.relight.util.BlockPos;
+import io.github.opencubicchunks.relight.util.ChunkPos;
+import io.github.opencubicchunks.relight.util.Vec3List;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class PendingEdgeStoreTest {
+
+    @Test
+    public void testEdgesRoundTrip() {
+        Random rand = new Random(42);
+        PendingEdgeStore store = new PendingEdgeStore();
+        ChunkPos pos = new ChunkPos(-3, 5, 7);
+        Set<BlockPos> expected = new HashSet<>();
+        int[][] dirs = {{-1, 0, 0}, {1, 0, 0}, {0, -1, 0}, {0, 1, 0}, {0, 0, -1}, {0, 0, 1}};
+        for (int i = 0; i < 500; i++) {
+            int[] dir = dirs[rand.nextInt(6)];
+            // a block on the face of the chunk toward the direction
+            int x = dir[0] == 0 ? rand.nextInt(16) : dir[0] < 0 ? 0 : 15;
+            int y = dir[1] == 0 ? rand.nextInt(16) : dir[1] < 0 ? 0 : 15;
+            int z = dir[2] == 0 ? rand.nextInt(16) : dir[2] < 0 ? 0 : 15;
+            BlockPos to = new BlockPos(pos.blockX(x), pos.blockY(y), pos.blockZ(z));
+            store.addEdge(to.getX(), to.getY(), to.getZ(), to.getX() + dir[0], to.getY() + dir[1], to.getZ() + dir[2]);
+            expected.add(to);
+        }
+        assertTrue(store.hasEdges(pos));
+        assertEquals(1, store.size());
+        assertEquals(expected, drain(store, pos));
+        assertFalse(store.hasEdges(pos));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testFace() {
+        PendingEdgeStore store = new PendingEdgeStore();
+        ChunkPos pos = new ChunkPos(1, 2, 3);
+        store.addFace(pos, new ChunkPos(1, 3, 3));
+        Set<BlockPos> positions = drain(store, pos);
+        assertEquals(256, positions.size());
+        for (BlockPos block : positions) {
+            assertEquals(pos.blockY(15), block.getY());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFaceNotAdjacent() {
+        new PendingEdgeStore().addFace(new ChunkPos(0, 0, 0), new ChunkPos(1, 1, 0));
+    }
+
+    @Test
+    public void testGetSetEdges() {
+        PendingEdgeStore store = new PendingEdgeStore();
+        ChunkPos pos = new ChunkPos(0, 0, 0);
+        assertNull(store.getEdges(pos));
+        store.addEdge(0, 3, 4, -1, 3, 4);
+        long[] data = store.getEdges(pos);
+        store.remove(pos);
+        assertFalse(store.hasEdges(pos));
+
+        store.addEdge(5, 15, 6, 5, 16, 6);
+        store.setEdges(pos, data);
+        Set<BlockPos> expected = new HashSet<>();
+        expected.add(new BlockPos(0, 3, 4));
+        expected.add(new BlockPos(5, 15, 6));
+        assertEquals(expected, drain(store, pos));
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        Random rand = new Random(42);
+        PendingEdgeStore store = new PendingEdgeStore();
+        for (int i = 0; i < 50; i++) {
+            // on the -X face of a chunk
+            int x = (rand.nextInt(12) - 6) << 4, y = rand.nextInt(200) - 100, z = rand.nextInt(200) - 100;
+            store.addEdge(x, y, z, x - 1, y, z);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.write(new DataOutputStream(bytes));
+
+        PendingEdgeStore read = new PendingEdgeStore();
+        read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(store.size(), read.size());
+        for (int x = -7; x <= 7; x++) {
+            for (int y = -7; y <= 7; y++) {
+                for (int z = -7; z <= 7; z++) {
+                    ChunkPos pos = new ChunkPos(x, y, z);
+                    long[] expected = store.getEdges(pos);
+                    if (expected == null) {
+                        assertFalse(read.hasEdges(pos));
+                    } else {
+                        assertArrayEquals(expected, read.getEdges(pos));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<BlockPos> drain(PendingEdgeStore store, ChunkPos pos) {
+        Vec3List list = new Vec3List(16);
+        store.drainTo(pos, list);
+        Set<BlockPos> positions = new HashSet<>();
+        while (list.next()) {
+            positions.add(new BlockPos(list.getX(), list.getY(), list.getZ()));
+        }
+        return positions;
+    }
+}